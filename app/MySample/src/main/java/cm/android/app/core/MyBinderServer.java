@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.IBinder;
 
 import cm.android.app.test.TestContext;
 import cm.android.app.test.server.TestManagerServer;
@@ -12,6 +13,7 @@ import cm.android.framework.client.core.Framework;
 import cm.android.framework.client.core.LogUtil;
 import cm.android.framework.component.BaseBinderServer;
 import cm.android.framework.ext.alarm.TimerServer;
+import cm.android.framework.server.daemon.ServiceSupervisor;
 import cm.android.util.SystemUtil;
 
 public class MyBinderServer extends BaseBinderServer {
@@ -29,12 +31,26 @@ public class MyBinderServer extends BaseBinderServer {
         ObjectPool.init(context);
         this.context = context;
         testManager = new TestManagerServer();
-        Framework.addService(TestContext.TEST, testManager);
+        addService(TestContext.TEST, testManager, new ServiceSupervisor.Restorer() {
+            @Override
+            public IBinder restore(String name) {
+                testManager = new TestManagerServer();
+                return testManager;
+            }
+        }, null);
 
         timerServer = new TimerServer();
         timerServer.start(context);
 
-        Framework.addService(TestContext.TIMER_TASK_SERVER, timerServer);
+        //服务对象仍然有效，被移出缓存后重新添加即可
+        ServiceSupervisor.Restorer timerRestorer = new ServiceSupervisor.Restorer() {
+            @Override
+            public IBinder restore(String name) {
+                return TestContext.TIMER_BATCH_SERVER.equals(name) ? timerServer.getBatchReceiver() : timerServer;
+            }
+        };
+        addService(TestContext.TIMER_TASK_SERVER, timerServer, timerRestorer, null);
+        addService(TestContext.TIMER_BATCH_SERVER, timerServer.getBatchReceiver(), timerRestorer, null);
 
 //        AppContext.register(TestContext.TEST, testManager);
     }
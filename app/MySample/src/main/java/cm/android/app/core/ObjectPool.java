@@ -5,11 +5,14 @@ import android.content.Context;
 import cm.android.app.test.TestContext;
 import cm.android.app.test.server.TestManager;
 import cm.android.framework.client.core.Framework;
+import cm.android.framework.client.ipc.BatchChannel;
 import cm.android.framework.ext.alarm.TimerManager;
 
 public class ObjectPool {
     private static Context sAppContext;
 
+    private static final BatchChannel sTimerChannel = new BatchChannel(TestContext.TIMER_BATCH_SERVER);
+
     /**
      * Init.
      */
@@ -30,7 +33,14 @@ public class ObjectPool {
 
     public static TimerManager getTimerManager() {
 //        TimerManager test = BinderFactory.getProxy(TestContext.TIMER_TASK_SERVER,TimerManager.class);
-        TimerManager test = Framework.getBinderProxy(TestContext.TIMER_TASK_SERVER, TimerManager.class);
+        TimerManager test = Framework.getBinderProxy(TestContext.TIMER_TASK_SERVER, TimerManager.CREATOR);
         return test;
     }
+
+    /**
+     * 合并发送timer的register/unregister，见{@link cm.android.framework.ext.alarm.TimerServer#register}
+     */
+    public static BatchChannel getTimerChannel() {
+        return sTimerChannel;
+    }
 }
@@ -12,6 +12,7 @@ import cm.android.app.core.ObjectPool;
 import cm.android.app.test.server.TestManager;
 import cm.android.framework.client.core.Framework;
 import cm.android.framework.client.core.LogUtil;
+import cm.android.framework.ext.alarm.TimerServer;
 import cm.android.sdk.content.BaseBroadcastReceiver;
 
 public class MainActivity extends Activity {
@@ -57,7 +58,7 @@ public class MainActivity extends Activity {
         LogUtil.getLogger().error("gggg onCreate");
         tm.count();
 
-        ObjectPool.getTimerManager().register("gggg.action.timer", 1000, 1000);
+        TimerServer.register(ObjectPool.getTimerChannel(), "gggg.action.timer", 1000, 1000);
 
 //        Intent intent = new Intent("cm.mdm.android.intent.action.WAKEUP_MDM");
 //        intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
@@ -69,6 +70,6 @@ public class MainActivity extends Activity {
         super.onPause();
 
         LoggerFactory.getLogger("ggg").error("ggg onPause");
-        ObjectPool.getTimerManager().unregister("gggg.action.timer");
+        TimerServer.unregister(ObjectPool.getTimerChannel(), "gggg.action.timer");
     }
 }
@@ -5,4 +5,6 @@ public class TestContext {
     public static final String TEST = "test";
 
     public static final String TIMER_TASK_SERVER = "TIMER_TASK_SERVER";
+
+    public static final String TIMER_BATCH_SERVER = "TIMER_BATCH_SERVER";
 }
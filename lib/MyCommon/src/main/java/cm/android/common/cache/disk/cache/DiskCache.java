@@ -27,7 +27,14 @@ public abstract class DiskCache<V> implements ICache<String, V> {
     protected final DiskLruCache cache;
 
     public DiskCache(File directory, long maxSize) throws IOException {
-        cache = DiskLruCache.open(directory, VERSION, ENTRY_COUNT, maxSize);
+        this(directory, maxSize, ENTRY_COUNT);
+    }
+
+    /**
+     * @param entryCount 每个key对应的文件数，用于元数据和内容分开存储
+     */
+    protected DiskCache(File directory, long maxSize, int entryCount) throws IOException {
+        cache = DiskLruCache.open(directory, VERSION, entryCount, maxSize);
     }
 
     public void release() {
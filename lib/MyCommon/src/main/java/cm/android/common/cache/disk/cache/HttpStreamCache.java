@@ -0,0 +1,82 @@
+package cm.android.common.cache.disk.cache;
+
+import com.jakewharton.disklrucache.DiskLruCache.Editor;
+import com.jakewharton.disklrucache.DiskLruCache.Snapshot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+import cm.android.common.cache.disk.entry.HttpResponseEntry;
+import okio.ByteString;
+
+/**
+ * 支持流式读写的http缓存，元数据和内容分开存放：
+ * 元数据通过{@link #get(String)}/{@link #put(String, HttpResponseEntry)}读写，
+ * 内容通过{@link #getSnapshot(String)}/{@link #edit(String)}的{@link #ENTRY_BODY}流式读写
+ */
+public class HttpStreamCache extends DiskCache<HttpResponseEntry> {
+
+    private static final Logger logger = LoggerFactory.getLogger("http");
+
+    public static final int ENTRY_METADATA = 0;
+
+    public static final int ENTRY_BODY = 1;
+
+    public HttpStreamCache(File directory, long maxSize) throws IOException {
+        super(directory, maxSize, 2);
+    }
+
+    /**
+     * DiskLruCache的key只允许[a-z0-9_-]，使用url的md5
+     */
+    public static String key(String url) {
+        return ByteString.encodeUtf8(url).md5().hex();
+    }
+
+    @Override
+    public void writeTo(HttpResponseEntry value, Editor editor) throws IOException {
+        value.writeTo(editor);
+    }
+
+    @Override
+    public HttpResponseEntry readFrom(Snapshot snapshot) throws IOException {
+        HttpResponseEntry entry = new HttpResponseEntry();
+        entry.readFrom(snapshot);
+        return entry;
+    }
+
+    /**
+     * 是否过期由请求和响应的Cache-Control共同决定，见{@link cm.android.common.http.CacheInterceptor}
+     */
+    @Override
+    public boolean isExpire(String key) {
+        return get(key) == null;
+    }
+
+    /**
+     * 调用方负责关闭
+     */
+    public Snapshot getSnapshot(String key) {
+        try {
+            return cache.get(key);
+        } catch (IOException e) {
+            logger.error("key = " + key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 同一个key正在编辑时返回null
+     */
+    public Editor edit(String key) {
+        try {
+            return cache.edit(key);
+        } catch (IOException e) {
+            logger.error("key = " + key, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package cm.android.common.cache.disk.entry;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import cm.java.util.StrictLineReader;
+import okhttp3.Headers;
+
+/**
+ * http响应的元数据（状态行、响应头、时间），内容单独存放，见{@link cm.android.common.cache.disk.cache.HttpStreamCache}
+ */
+public class HttpResponseEntry extends DiskCacheEntry {
+
+    private String url;
+
+    private int code;
+
+    private String message;
+
+    private Headers headers;
+
+    private long sentRequestMillis;
+
+    private long receivedResponseMillis;
+
+    public HttpResponseEntry() {
+        super(0);
+    }
+
+    public HttpResponseEntry(String url, int code, String message, Headers headers,
+                             long sentRequestMillis, long receivedResponseMillis) {
+        super(0);
+        this.url = url;
+        this.code = code;
+        this.message = message;
+        this.headers = headers;
+        this.sentRequestMillis = sentRequestMillis;
+        this.receivedResponseMillis = receivedResponseMillis;
+    }
+
+    @Override
+    protected void read(StrictLineReader reader) throws IOException {
+        url = reader.readLine();
+        code = Integer.parseInt(reader.readLine());
+        message = reader.readLine();
+        sentRequestMillis = Long.parseLong(reader.readLine());
+        receivedResponseMillis = Long.parseLong(reader.readLine());
+
+        int length = Integer.parseInt(reader.readLine());
+        Headers.Builder builder = new Headers.Builder();
+        for (int i = 0; i < length; i++) {
+            String line = reader.readLine();
+            int index = line.indexOf(':');
+            builder.add(line.substring(0, index), line.substring(index + 1));
+        }
+        headers = builder.build();
+    }
+
+    @Override
+    protected void write(Writer writer) throws IOException {
+        writer.write(url + '\n');
+        writer.write(String.valueOf(code) + '\n');
+        writer.write(message + '\n');
+        writer.write(String.valueOf(sentRequestMillis) + '\n');
+        writer.write(String.valueOf(receivedResponseMillis) + '\n');
+
+        writer.write(String.valueOf(headers.size()) + '\n');
+        for (int i = 0; i < headers.size(); i++) {
+            writer.write(headers.name(i) + ":" + headers.value(i) + '\n');
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Headers getHeaders() {
+        return headers;
+    }
+
+    public long getSentRequestMillis() {
+        return sentRequestMillis;
+    }
+
+    public long getReceivedResponseMillis() {
+        return receivedResponseMillis;
+    }
+}
@@ -0,0 +1,284 @@
+package cm.android.common.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cm.android.thread.PriorityThreadFactory;
+
+/**
+ * 异步执行dao操作：
+ * <p>
+ * - 写操作在单个写线程上串行执行，排队中的写合并为一批，有{@link Transactor}时在同一个事务中提交；
+ * 批中有写失败时整批回滚，再逐个在各自的事务中重新执行，失败的写不影响同批的其他写
+ * - 读操作在读线程池上并发执行，按优先级排序，同优先级先进先出
+ * - 返回{@link Future}，可选{@link Callback}在主线程回调
+ */
+public class AsyncDao {
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_LOW = 2;
+
+    private static final int MAX_BATCH = 64;
+
+    /**
+     * 把一批写放在一个事务中执行，见{@link SQLiteDao#runInTransaction(Runnable)}
+     */
+    public interface Transactor {
+        void runInTransaction(Runnable body);
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+
+        void onError(Throwable e);
+    }
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Transactor transactor;
+
+    private final ThreadPoolExecutor readers;
+
+    private final ExecutorService writer;
+
+    private final Queue<Task<?>> writes = new ArrayDeque<>();
+
+    private boolean draining;
+
+    private final Runnable drainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * @param transactor 为null时每个写单独执行，例如基于ContentResolver的{@link BaseDao}
+     */
+    public AsyncDao(Transactor transactor, int readerCount) {
+        this.transactor = transactor;
+        readerCount = Math.max(1, readerCount);
+        this.readers = new ThreadPoolExecutor(readerCount, readerCount, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(),
+                new PriorityThreadFactory("dao-reader", Process.THREAD_PRIORITY_BACKGROUND));
+        this.readers.allowCoreThreadTimeOut(true);
+        this.writer = Executors.newSingleThreadExecutor(
+                new PriorityThreadFactory("dao-writer", Process.THREAD_PRIORITY_BACKGROUND));
+    }
+
+    public <T> Future<T> read(Callable<T> callable) {
+        return read(PRIORITY_NORMAL, callable, null);
+    }
+
+    public <T> Future<T> read(int priority, Callable<T> callable, Callback<T> callback) {
+        Task<T> task = new Task<>(callable, priority, sequence.getAndIncrement(), callback);
+        readers.execute(task);
+        return task;
+    }
+
+    public <T> Future<T> write(Callable<T> callable) {
+        return write(callable, null);
+    }
+
+    public <T> Future<T> write(Callable<T> callable, Callback<T> callback) {
+        Task<T> task = new Task<>(callable, PRIORITY_NORMAL, sequence.getAndIncrement(), callback);
+        synchronized (writes) {
+            writes.add(task);
+            if (!draining) {
+                draining = true;
+                writer.execute(drainRunnable);
+            }
+        }
+        return task;
+    }
+
+    public void shutdown() {
+        readers.shutdown();
+        writer.shutdown();
+    }
+
+    private void drain() {
+        while (true) {
+            final List<Task<?>> batch = new ArrayList<>();
+            synchronized (writes) {
+                while (!writes.isEmpty() && batch.size() < MAX_BATCH) {
+                    batch.add(writes.poll());
+                }
+                if (batch.isEmpty()) {
+                    draining = false;
+                    return;
+                }
+            }
+
+            //单个写的异常记录在各自的task上；提交后再完成future
+            try {
+                if (transactor == null) {
+                    for (Task<?> task : batch) {
+                        task.execute();
+                    }
+                } else if (batch.size() == 1 || !runBatch(batch)) {
+                    runEach(batch);
+                }
+            } catch (RuntimeException e) {
+                logger.error("AsyncDao:commit failed:count = " + batch.size(), e);
+                for (Task<?> task : batch) {
+                    task.fail(e);
+                }
+                continue;
+            }
+            for (Task<?> task : batch) {
+                task.complete();
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中执行整批写
+     *
+     * @return 有写失败时回滚并返回false。写内部的嵌套事务失败时，外层事务提交时会被整体回滚，
+     * 因此不能只记录失败后继续提交
+     */
+    private boolean runBatch(final List<Task<?>> batch) {
+        try {
+            transactor.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    for (Task<?> task : batch) {
+                        task.execute();
+                        if (task.error != null) {
+                            throw new RollbackException();
+                        }
+                    }
+                }
+            });
+            return true;
+        } catch (RollbackException e) {
+            logger.info("AsyncDao:batch rolled back:count = {}", batch.size());
+            return false;
+        }
+    }
+
+    /**
+     * 每个写在各自的事务中执行，失败的写回滚自身
+     */
+    private void runEach(List<Task<?>> batch) {
+        for (final Task<?> task : batch) {
+            task.reset();
+            try {
+                transactor.runInTransaction(new Runnable() {
+                    @Override
+                    public void run() {
+                        task.execute();
+                        if (task.error != null) {
+                            throw new RollbackException();
+                        }
+                    }
+                });
+            } catch (RollbackException ignore) {
+            }
+        }
+    }
+
+    private static final class RollbackException extends RuntimeException {
+    }
+
+    private static final class Task<T> extends FutureTask<T> implements Comparable<Task<?>> {
+        private final Callable<T> callable;
+        private final int priority;
+        private final long sequence;
+        private final Callback<T> callback;
+
+        private T result;
+        private Throwable error;
+
+        Task(Callable<T> callable, int priority, long sequence, Callback<T> callback) {
+            super(callable);
+            this.callable = callable;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.callback = callback;
+        }
+
+        /**
+         * 执行但不完成future，用于批量写
+         */
+        void execute() {
+            if (isDone()) {
+                return;
+            }
+            try {
+                result = callable.call();
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+
+        void reset() {
+            result = null;
+            error = null;
+        }
+
+        void complete() {
+            if (error != null) {
+                setException(error);
+            } else {
+                set(result);
+            }
+        }
+
+        void fail(Throwable e) {
+            setException(e);
+        }
+
+        @Override
+        public int compareTo(Task<?> another) {
+            if (priority != another.priority) {
+                return priority < another.priority ? -1 : 1;
+            }
+            return sequence < another.sequence ? -1 : (sequence == another.sequence ? 0 : 1);
+        }
+
+        @Override
+        protected void done() {
+            if (callback == null || isCancelled()) {
+                return;
+            }
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        callback.onResult(get());
+                    } catch (ExecutionException e) {
+                        callback.onError(e.getCause());
+                    } catch (InterruptedException | CancellationException e) {
+                        callback.onError(e);
+                    }
+                }
+            });
+        }
+    }
+}
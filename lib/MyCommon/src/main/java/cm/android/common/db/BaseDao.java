@@ -3,15 +3,26 @@ package cm.android.common.db;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.RemoteException;
 import android.provider.BaseColumns;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 public class BaseDao {
     private static final Logger logger = LoggerFactory.getLogger("db");
 
@@ -21,6 +32,10 @@ public class BaseDao {
 
     protected String[] projection;
 
+    private volatile QueryCache queryCache;
+
+    private ContentObserver queryCacheObserver;
+
     public void register(Context context, ContentObserver observer) {
         context.getContentResolver()
                 .registerContentObserver(contentUri, true, observer);
@@ -36,6 +51,76 @@ public class BaseDao {
         this.projection = projection.clone();
     }
 
+    /**
+     * 开启查询缓存，{@link #queryList}的结果按(class, selection, args, sortOrder)缓存，
+     * contentUri有变化或通过本dao写入时失效；命中时返回共享的bean，见{@link #queryList}
+     */
+    public synchronized void enableQueryCache(Context context, int maxSize) {
+        if (queryCache != null) {
+            return;
+        }
+        final QueryCache cache = new QueryCache(maxSize);
+        queryCacheObserver = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                cache.invalidate();
+            }
+        };
+        register(context, queryCacheObserver);
+        queryCache = cache;
+    }
+
+    public synchronized void disableQueryCache(Context context) {
+        if (queryCache == null) {
+            return;
+        }
+        unregister(context, queryCacheObserver);
+        queryCacheObserver = null;
+        queryCache = null;
+    }
+
+    /**
+     * 查询缓存的命中统计，未开启时返回null
+     */
+    public String getQueryCacheStats() {
+        QueryCache cache = queryCache;
+        return cache == null ? null : cache.toString();
+    }
+
+    private void invalidateQueryCache() {
+        QueryCache cache = queryCache;
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    /**
+     * 查询并映射为不可修改的列表，开启查询缓存时优先返回缓存结果
+     * <p>
+     * 缓存命中时返回的bean与其他调用方共享，不能修改；需要修改时先拷贝
+     */
+    protected <T> List<T> queryList(final String selection, final String[] selectionArgs, final String sortOrder,
+                                    final Class<T> clazz) {
+        QueryCache.Loader<T> loader = new QueryCache.Loader<T>() {
+            @Override
+            public List<T> load() {
+                Cursor cursor = query(selection, selectionArgs, sortOrder);
+                try {
+                    return SqlUtil.parseList(cursor, clazz);
+                } finally {
+                    DBUtil.closeQuietly(cursor);
+                }
+            }
+        };
+
+        QueryCache cache = queryCache;
+        if (cache == null) {
+            List<T> list = loader.load();
+            return list == null ? null : Collections.unmodifiableList(list);
+        }
+        return cache.get(new QueryCache.Key(clazz, selection, selectionArgs, sortOrder), loader);
+    }
+
     public int deleteAll() {
         int count = delete(null, null);
         return count;
@@ -43,6 +128,7 @@ public class BaseDao {
 
     protected long insert(ContentValues values) {
         Uri uri = resolver.insert(contentUri, values);
+        invalidateQueryCache();
         String itemId = uri.getPathSegments().get(1);
         return Integer.valueOf(itemId).longValue();
     }
@@ -50,11 +136,13 @@ public class BaseDao {
     public int update(int id, ContentValues values) {
         Uri uri = ContentUris.withAppendedId(contentUri, id);
         int count = resolver.update(uri, values, null, null);
+        invalidateQueryCache();
         return count;
     }
 
     public int update(ContentValues values, String where, String[] selectionArgs) {
         int count = resolver.update(contentUri, values, where, selectionArgs);
+        invalidateQueryCache();
         return count;
     }
 
@@ -71,6 +159,7 @@ public class BaseDao {
 
     public int delete(Uri uri, String where, String[] selectionArgs) {
         int count = resolver.delete(uri, where, selectionArgs);
+        invalidateQueryCache();
         return count;
     }
 
@@ -93,13 +182,258 @@ public class BaseDao {
         }
     }
 
+    /**
+     * IN (...)的参数个数，SQLite默认最多999个绑定参数；
+     * 同时作为bulkInsert/applyBatch每批的最大行数，限制单次binder事务的大小
+     */
+    private static final int BATCH_COUNT = 500;
+
+    /**
+     * 单次批量操作的估算大小上限，binder事务缓冲区为1MB且进程内共享
+     */
+    private static final int BATCH_BYTES = 256 * 1024;
+
+    /**
+     * 分批bulkInsert，返回插入的行数
+     */
+    public int bulkInsert(List<ContentValues> valuesList) {
+        int count = 0;
+        int start = 0;
+        while (start < valuesList.size()) {
+            int end = nextChunk(valuesList, start);
+            List<ContentValues> chunk = valuesList.subList(start, end);
+            count += resolver.bulkInsert(contentUri, chunk.toArray(new ContentValues[chunk.size()]));
+            start = end;
+        }
+        invalidateQueryCache();
+        return count;
+    }
+
+    /**
+     * 按keyColumn批量upsert：先分批查出已存在的_id，再通过applyBatch分批update/insert
+     * <p>
+     * - 每个ContentValues必须包含keyColumn，否则抛出IllegalArgumentException
+     * - keyColumn相同的多条只保留最后一条，位置为第一次出现的位置，返回结果与去重后的顺序对应
+     * - 每批在provider端是否为同一事务取决于provider的applyBatch实现
+     */
+    public ContentProviderResult[] upsertAll(List<ContentValues> valuesList, String keyColumn)
+            throws RemoteException, OperationApplicationException {
+        valuesList = dedupe(valuesList, keyColumn);
+        Map<String, Integer> ids = queryIds(valuesList, keyColumn);
+
+        List<ContentProviderResult> results = new ArrayList<>(valuesList.size());
+        int start = 0;
+        while (start < valuesList.size()) {
+            int end = nextChunk(valuesList, start);
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                ContentValues values = valuesList.get(i);
+                Integer id = ids.get(values.getAsString(keyColumn));
+                if (id != null) {
+                    operations.add(ContentProviderOperation
+                            .newUpdate(ContentUris.withAppendedId(contentUri, id))
+                            .withValues(values)
+                            .build());
+                } else {
+                    operations.add(ContentProviderOperation.newInsert(contentUri)
+                            .withValues(values)
+                            .build());
+                }
+            }
+            Collections.addAll(results, resolver.applyBatch(contentUri.getAuthority(), operations));
+            start = end;
+        }
+        invalidateQueryCache();
+        return results.toArray(new ContentProviderResult[results.size()]);
+    }
+
+    private static List<ContentValues> dedupe(List<ContentValues> valuesList, String keyColumn) {
+        Map<String, ContentValues> unique = new LinkedHashMap<>(valuesList.size());
+        for (ContentValues values : valuesList) {
+            String key = values.getAsString(keyColumn);
+            if (key == null) {
+                throw new IllegalArgumentException("missing " + keyColumn + ":" + values);
+            }
+            unique.put(key, values);
+        }
+        if (unique.size() == valuesList.size()) {
+            return valuesList;
+        }
+        return new ArrayList<>(unique.values());
+    }
+
+    /**
+     * 按_id分批删除，返回删除的行数
+     */
+    public int deleteByIds(List<Integer> ids) {
+        int count = 0;
+        for (int start = 0; start < ids.size(); start += BATCH_COUNT) {
+            List<Integer> chunk = ids.subList(start, Math.min(start + BATCH_COUNT, ids.size()));
+            String[] args = new String[chunk.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = String.valueOf(chunk.get(i));
+            }
+            count += delete(BaseColumns._ID + " IN (" + placeholders(args.length) + ")", args);
+        }
+        return count;
+    }
+
+    private Map<String, Integer> queryIds(List<ContentValues> valuesList, String keyColumn) {
+        Map<String, Integer> ids = new HashMap<>();
+        String[] idProjection = {BaseColumns._ID, keyColumn};
+        for (int start = 0; start < valuesList.size(); start += BATCH_COUNT) {
+            int end = Math.min(start + BATCH_COUNT, valuesList.size());
+            String[] args = new String[end - start];
+            for (int i = start; i < end; i++) {
+                args[i - start] = valuesList.get(i).getAsString(keyColumn);
+            }
+            Cursor cursor = resolver.query(contentUri, idProjection,
+                    keyColumn + " IN (" + placeholders(args.length) + ")", args, null);
+            if (cursor == null) {
+                continue;
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    ids.put(cursor.getString(1), cursor.getInt(0));
+                }
+            } finally {
+                DBUtil.closeQuietly(cursor);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 从start开始，返回不超过行数和大小上限的一批的结束下标
+     */
+    private static int nextChunk(List<ContentValues> valuesList, int start) {
+        int end = start;
+        int bytes = 0;
+        while (end < valuesList.size() && end - start < BATCH_COUNT) {
+            bytes += estimateSize(valuesList.get(end));
+            if (bytes > BATCH_BYTES && end > start) {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    private static int estimateSize(ContentValues values) {
+        int size = 0;
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            size += entry.getKey().length() * 2 + 8;
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                size += ((String) value).length() * 2;
+            } else if (value instanceof byte[]) {
+                size += ((byte[]) value).length;
+            } else {
+                size += 8;
+            }
+        }
+        return size;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder builder = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append('?');
+        }
+        return builder.toString();
+    }
+
     protected Cursor query(String selection, String[] selectionArgs, String sortOrder) {
         Cursor cursor = resolver.query(contentUri, projection, selection, selectionArgs, sortOrder);
         return cursor;
     }
 
+    /**
+     * 惰性遍历查询结果，见{@link CursorIterable}
+     */
+    protected <T> CursorIterable<T> iterate(String selection, String[] selectionArgs, String sortOrder,
+                                            Class<T> clazz) {
+        return iterate(selection, selectionArgs, sortOrder, clazz, false);
+    }
+
+    /**
+     * @param reuseRow true时每行复用同一个对象
+     */
+    protected <T> CursorIterable<T> iterate(String selection, String[] selectionArgs, String sortOrder,
+                                            Class<T> clazz, boolean reuseRow) {
+        Cursor cursor = query(selection, selectionArgs, sortOrder);
+        return new CursorIterable<>(cursor, clazz, reuseRow);
+    }
+
+    /**
+     * {@link #queryWindow}通过uri的该参数传递行数上限，provider支持时应作为LIMIT使用
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+    /**
+     * 按_id分页查询_id大于afterId的最多windowSize条，首页afterId传0
+     * <p>
+     * 使用_id作为游标而不是OFFSET，跳过的行不会被扫描；projection需包含_id。
+     * 不在sortOrder中拼LIMIT，不是所有provider都支持，改为通过{@link #QUERY_PARAMETER_LIMIT}传递windowSize + 1，
+     * 忽略该参数的provider结果同样正确；多读一行判断hasMore，不调用getCount
+     */
+    protected <T> Window<T> queryWindow(String selection, String[] selectionArgs, long afterId, int windowSize,
+                                        Class<T> clazz) {
+        String keyset = BaseColumns._ID + " > ?";
+        String where = selection == null ? keyset : "(" + selection + ") AND " + keyset;
+        int argCount = selectionArgs == null ? 0 : selectionArgs.length;
+        String[] args = new String[argCount + 1];
+        if (argCount > 0) {
+            System.arraycopy(selectionArgs, 0, args, 0, argCount);
+        }
+        args[argCount] = String.valueOf(afterId);
+        Uri uri = contentUri.buildUpon()
+                .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(windowSize + 1))
+                .build();
+        Cursor cursor = resolver.query(uri, projection, where, args, BaseColumns._ID + " ASC");
+        if (cursor == null) {
+            return new Window<>(Collections.<T>emptyList(), afterId, false);
+        }
+        try {
+            int idIndex = cursor.getColumnIndexOrThrow(BaseColumns._ID);
+            RowMapper.Bound<T> bound = RowMapper.of(clazz).bind(cursor);
+            List<T> rows = new ArrayList<>(Math.min(windowSize, 64));
+            long lastId = afterId;
+            while (rows.size() < windowSize && cursor.moveToNext()) {
+                rows.add(bound.map());
+                lastId = cursor.getLong(idIndex);
+            }
+            boolean hasMore = rows.size() == windowSize && cursor.moveToNext();
+            return new Window<>(rows, lastId, hasMore);
+        } finally {
+            DBUtil.closeQuietly(cursor);
+        }
+    }
+
+    /**
+     * {@link #queryWindow}的一页结果
+     */
+    public static final class Window<T> {
+        public final List<T> rows;
+        /**
+         * 本页最后一条的_id，作为下一页的afterId
+         */
+        public final long lastId;
+        public final boolean hasMore;
+
+        Window(List<T> rows, long lastId, boolean hasMore) {
+            this.rows = rows;
+            this.lastId = lastId;
+            this.hasMore = hasMore;
+        }
+    }
+
     protected int delete(String selection, String[] selectionArgs) {
         int count = resolver.delete(contentUri, selection, selectionArgs);
+        invalidateQueryCache();
         return count;
     }
 
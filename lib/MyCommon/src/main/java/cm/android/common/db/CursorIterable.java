@@ -0,0 +1,81 @@
+package cm.android.common.db;
+
+import android.database.Cursor;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 逐行映射Cursor，不一次性加载全部结果
+ * <p>
+ * 遍历结束后自动关闭Cursor，中途退出需调用{@link #close()}；只能遍历一次
+ * <p>
+ * 复用模式下每次{@link Iterator#next()}返回同一个对象，调用方需自行拷贝需要保留的数据
+ */
+public final class CursorIterable<T> implements Iterable<T>, Closeable {
+
+    private final Cursor cursor;
+    private final RowMapper.Bound<T> bound;
+    private final T reuse;
+    private boolean iterated;
+
+    CursorIterable(Cursor cursor, Class<T> clazz, boolean reuseRow) {
+        this.cursor = cursor;
+        if (cursor == null) {
+            this.bound = null;
+            this.reuse = null;
+        } else {
+            RowMapper<T> mapper = RowMapper.of(clazz);
+            this.bound = mapper.bind(cursor);
+            this.reuse = reuseRow ? mapper.newInstance() : null;
+        }
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("CursorIterable can only be iterated once");
+        }
+        iterated = true;
+        if (cursor != null) {
+            cursor.moveToPosition(-1);
+        }
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                if (cursor == null || cursor.isClosed()) {
+                    return false;
+                }
+                if (cursor.getPosition() < cursor.getCount() - 1) {
+                    return true;
+                }
+                close();
+                return false;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                cursor.moveToNext();
+                return reuse == null ? bound.map() : bound.mapInto(reuse);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public int getCount() {
+        return cursor == null || cursor.isClosed() ? 0 : cursor.getCount();
+    }
+
+    @Override
+    public void close() {
+        DBUtil.closeQuietly(cursor);
+    }
+}
@@ -0,0 +1,149 @@
+package cm.android.common.db;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link BaseDao}的查询结果缓存
+ * <p>
+ * - 同一个key并发未命中时只查询一次，其余调用等待并复用结果
+ * - {@link #invalidate()}后，正在进行的查询结果不会写入缓存
+ * - 按访问顺序淘汰，最多保留maxSize个结果
+ * - 缓存的列表不可修改，但命中时各调用方拿到的是同一批bean实例，bean不能被修改
+ */
+final class QueryCache {
+
+    interface Loader<T> {
+        List<T> load();
+    }
+
+    /**
+     * 查询条件，各部分分别比较，不拼接成字符串，避免selection或参数中的分隔符造成冲突
+     */
+    static final class Key {
+        private final Class<?> clazz;
+        private final String selection;
+        private final String[] selectionArgs;
+        private final String sortOrder;
+        private final int hash;
+
+        Key(Class<?> clazz, String selection, String[] selectionArgs, String sortOrder) {
+            this.clazz = clazz;
+            this.selection = selection;
+            this.selectionArgs = selectionArgs == null ? null : selectionArgs.clone();
+            this.sortOrder = sortOrder;
+            this.hash = Arrays.hashCode(new Object[]{clazz, selection, sortOrder})
+                    * 31 + Arrays.hashCode(this.selectionArgs);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return clazz == key.clazz
+                    && equal(selection, key.selection)
+                    && equal(sortOrder, key.sortOrder)
+                    && Arrays.equals(selectionArgs, key.selectionArgs);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    private final Map<Key, Entry> entries;
+
+    private long generation;
+
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    QueryCache(final int maxSize) {
+        entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> List<T> get(Key key, Loader<T> loader) {
+        Entry entry;
+        long gen;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(key, entry);
+            }
+            gen = generation;
+        }
+
+        synchronized (entry) {
+            synchronized (this) {
+                if (entry.value != null && entry.generation == generation) {
+                    hits++;
+                    return (List<T>) entry.value;
+                }
+                misses++;
+            }
+
+            List<T> value = loader.load();
+            if (value == null) {
+                return null;
+            }
+            value = Collections.unmodifiableList(value);
+            synchronized (this) {
+                if (gen == generation) {
+                    entry.value = value;
+                    entry.generation = gen;
+                }
+            }
+            return value;
+        }
+    }
+
+    synchronized void invalidate() {
+        generation++;
+        invalidations++;
+        entries.clear();
+    }
+
+    synchronized long getHitCount() {
+        return hits;
+    }
+
+    synchronized long getMissCount() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long total = hits + misses;
+        return "QueryCache{size = " + entries.size()
+                + ", hits = " + hits
+                + ", misses = " + misses
+                + ", hitRate = " + (total == 0 ? 0 : hits * 100 / total) + "%"
+                + ", invalidations = " + invalidations + "}";
+    }
+
+    private static final class Entry {
+        List<?> value;
+        long generation;
+    }
+}
@@ -0,0 +1,355 @@
+package cm.android.common.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * bean与Cursor/ContentValues之间的映射，每个Class只解析一次字段并缓存
+ * <p>
+ * 用法：
+ * <pre>
+ * RowMapper.Bound&lt;Bean&gt; bound = RowMapper.of(Bean.class).bind(cursor);
+ * while (cursor.moveToNext()) {
+ *     Bean bean = bound.map();
+ * }
+ * </pre>
+ * 列下标在{@link #bind(Cursor)}时解析一次；基本类型字段使用Cursor/Field的类型化方法读写，不装箱
+ * <p>
+ * NULL值：String字段为""，包装类型和byte[]字段为null，基本类型字段为新建对象时的默认值
+ */
+public final class RowMapper<T> {
+
+    private static final int TYPE_INT = 1;
+    private static final int TYPE_LONG = 2;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_BYTE = 4;
+    private static final int TYPE_FLOAT = 5;
+    private static final int TYPE_DOUBLE = 6;
+    private static final int TYPE_BOOLEAN = 7;
+    private static final int TYPE_STRING = 8;
+    private static final int TYPE_BLOB = 9;
+
+    private static final Map<Class<?>, RowMapper<?>> sMappers = new ConcurrentHashMap<>();
+
+    private final Class<T> mClass;
+    private final Constructor<T> mConstructor;
+    private final Property[] mProperties;
+
+    /**
+     * 新建对象的字段值，复用对象时基本类型字段遇到NULL用它重置
+     */
+    private volatile T mDefaults;
+
+    @SuppressWarnings("unchecked")
+    public static <T> RowMapper<T> of(Class<T> clazz) {
+        RowMapper<T> mapper = (RowMapper<T>) sMappers.get(clazz);
+        if (mapper == null) {
+            mapper = new RowMapper<>(clazz);
+            sMappers.put(clazz, mapper);
+        }
+        return mapper;
+    }
+
+    private RowMapper(Class<T> clazz) {
+        mClass = clazz;
+        try {
+            mConstructor = clazz.getDeclaredConstructor();
+            mConstructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(clazz.getName() + " has no default constructor", e);
+        }
+
+        List<Property> properties = new ArrayList<>();
+        for (Field field : clazz.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                continue;
+            }
+            Class<?> type = field.getType();
+            int typeCode = typeOf(type);
+            if (typeCode == 0) {
+                continue;
+            }
+            field.setAccessible(true);
+            properties.add(new Property(field, typeCode, type.isPrimitive()));
+        }
+        mProperties = properties.toArray(new Property[properties.size()]);
+    }
+
+    private static int typeOf(Class<?> type) {
+        if (type == int.class || type == Integer.class) {
+            return TYPE_INT;
+        } else if (type == long.class || type == Long.class) {
+            return TYPE_LONG;
+        } else if (type == short.class || type == Short.class) {
+            return TYPE_SHORT;
+        } else if (type == byte.class || type == Byte.class) {
+            return TYPE_BYTE;
+        } else if (type == float.class || type == Float.class) {
+            return TYPE_FLOAT;
+        } else if (type == double.class || type == Double.class) {
+            return TYPE_DOUBLE;
+        } else if (type == boolean.class || type == Boolean.class) {
+            return TYPE_BOOLEAN;
+        } else if (type == String.class) {
+            return TYPE_STRING;
+        } else if (type == byte[].class) {
+            return TYPE_BLOB;
+        }
+        return 0;
+    }
+
+    public Class<T> getType() {
+        return mClass;
+    }
+
+    /**
+     * 解析cursor的列下标，返回的对象只能用于该cursor
+     */
+    public Bound<T> bind(Cursor cursor) {
+        int[] indices = new int[mProperties.length];
+        for (int i = 0; i < mProperties.length; i++) {
+            indices[i] = cursor.getColumnIndex(mProperties[i].name);
+        }
+        return new Bound<>(this, cursor, indices);
+    }
+
+    public T newInstance() {
+        try {
+            return mConstructor.newInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to instance " + mClass.getName(), e);
+        }
+    }
+
+    private T defaults() {
+        T defaults = mDefaults;
+        if (defaults == null) {
+            defaults = newInstance();
+            mDefaults = defaults;
+        }
+        return defaults;
+    }
+
+    public ContentValues toContentValues(T bean) {
+        ContentValues values = new ContentValues(mProperties.length);
+        try {
+            for (Property property : mProperties) {
+                property.put(bean, values);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return values;
+    }
+
+    /**
+     * 绑定到某个cursor的mapper
+     */
+    public static final class Bound<T> {
+        private final RowMapper<T> mapper;
+        private final Cursor cursor;
+        private final int[] indices;
+
+        Bound(RowMapper<T> mapper, Cursor cursor, int[] indices) {
+            this.mapper = mapper;
+            this.cursor = cursor;
+            this.indices = indices;
+        }
+
+        public Cursor getCursor() {
+            return cursor;
+        }
+
+        /**
+         * 当前行转换为新对象
+         */
+        public T map() {
+            return read(mapper.newInstance(), null);
+        }
+
+        /**
+         * 当前行写入已有对象，用于复用对象；值为NULL的基本类型字段重置为默认值，不保留上一行的值
+         */
+        public T mapInto(T bean) {
+            return read(bean, mapper.defaults());
+        }
+
+        private T read(T bean, T defaults) {
+            Property[] properties = mapper.mProperties;
+            try {
+                for (int i = 0; i < properties.length; i++) {
+                    if (indices[i] >= 0) {
+                        properties[i].read(cursor, indices[i], bean, defaults);
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            return bean;
+        }
+    }
+
+    private static final class Property {
+        final Field field;
+        final String name;
+        final int type;
+        final boolean primitive;
+
+        Property(Field field, int type, boolean primitive) {
+            this.field = field;
+            this.name = field.getName();
+            this.type = type;
+            this.primitive = primitive;
+        }
+
+        /**
+         * @param defaults 不为null时，值为NULL的基本类型字段从defaults复制
+         */
+        void read(Cursor c, int index, Object bean, Object defaults) throws IllegalAccessException {
+            if (type == TYPE_STRING) {
+                //与原SqlUtil一致，NULL的TEXT映射为""
+                String value = c.getString(index);
+                field.set(bean, value == null ? "" : value);
+                return;
+            }
+            if (type == TYPE_BLOB) {
+                field.set(bean, c.getBlob(index));
+                return;
+            }
+
+            if (!primitive) {
+                field.set(bean, c.isNull(index) ? null : readBoxed(c, index));
+                return;
+            }
+
+            if (c.isNull(index)) {
+                if (defaults != null) {
+                    field.set(bean, field.get(defaults));
+                }
+                return;
+            }
+            switch (type) {
+                case TYPE_INT:
+                    field.setInt(bean, c.getInt(index));
+                    break;
+                case TYPE_LONG:
+                    field.setLong(bean, c.getLong(index));
+                    break;
+                case TYPE_SHORT:
+                    field.setShort(bean, c.getShort(index));
+                    break;
+                case TYPE_BYTE:
+                    field.setByte(bean, (byte) c.getInt(index));
+                    break;
+                case TYPE_FLOAT:
+                    field.setFloat(bean, c.getFloat(index));
+                    break;
+                case TYPE_DOUBLE:
+                    field.setDouble(bean, c.getDouble(index));
+                    break;
+                case TYPE_BOOLEAN:
+                    field.setBoolean(bean, c.getInt(index) != 0);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private Object readBoxed(Cursor c, int index) {
+            switch (type) {
+                case TYPE_INT:
+                    return c.getInt(index);
+                case TYPE_LONG:
+                    return c.getLong(index);
+                case TYPE_SHORT:
+                    return c.getShort(index);
+                case TYPE_BYTE:
+                    return (byte) c.getInt(index);
+                case TYPE_FLOAT:
+                    return c.getFloat(index);
+                case TYPE_DOUBLE:
+                    return c.getDouble(index);
+                case TYPE_BOOLEAN:
+                    return c.getInt(index) != 0;
+                default:
+                    return null;
+            }
+        }
+
+        void put(Object bean, ContentValues values) throws IllegalAccessException {
+            if (!primitive) {
+                Object value = field.get(bean);
+                if (value == null) {
+                    return;
+                }
+                switch (type) {
+                    case TYPE_INT:
+                        values.put(name, (Integer) value);
+                        break;
+                    case TYPE_LONG:
+                        values.put(name, (Long) value);
+                        break;
+                    case TYPE_SHORT:
+                        values.put(name, (Short) value);
+                        break;
+                    case TYPE_BYTE:
+                        values.put(name, (Byte) value);
+                        break;
+                    case TYPE_FLOAT:
+                        values.put(name, (Float) value);
+                        break;
+                    case TYPE_DOUBLE:
+                        values.put(name, (Double) value);
+                        break;
+                    case TYPE_BOOLEAN:
+                        values.put(name, (Boolean) value);
+                        break;
+                    case TYPE_STRING:
+                        values.put(name, (String) value);
+                        break;
+                    case TYPE_BLOB:
+                        values.put(name, (byte[]) value);
+                        break;
+                    default:
+                        break;
+                }
+                return;
+            }
+
+            switch (type) {
+                case TYPE_INT:
+                    values.put(name, field.getInt(bean));
+                    break;
+                case TYPE_LONG:
+                    values.put(name, field.getLong(bean));
+                    break;
+                case TYPE_SHORT:
+                    values.put(name, field.getShort(bean));
+                    break;
+                case TYPE_BYTE:
+                    values.put(name, field.getByte(bean));
+                    break;
+                case TYPE_FLOAT:
+                    values.put(name, field.getFloat(bean));
+                    break;
+                case TYPE_DOUBLE:
+                    values.put(name, field.getDouble(bean));
+                    break;
+                case TYPE_BOOLEAN:
+                    values.put(name, field.getBoolean(bean));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package cm.android.common.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
+import android.util.LruCache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+/**
+ * 直接操作进程内SQLiteDatabase的DAO，接口与{@link BaseDao}一致，不经过ContentResolver
+ * <p>
+ * - insert/update/delete使用编译好的SQLiteStatement，按SQL缓存（LRU），淘汰时关闭；
+ * 同一数据库的写共用一个连接，本身是串行的，所有写操作持有该数据库的写锁（同一数据库的所有SQLiteDao共用）
+ * - WAL影响整个数据库，需要时调用{@link #enableWriteAheadLogging()}开启
+ * - 通过{@link #runInTransaction(Runnable)}把多次写合并为一个事务
+ * - 与{@link SQLiteDatabase#insert}不同，insert失败（如违反约束）时抛出SQLException而不是返回-1
+ */
+public class SQLiteDao implements AsyncDao.Transactor {
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 16;
+
+    protected final SQLiteDatabase db;
+
+    protected final String table;
+
+    protected String[] projection;
+
+    private final LruCache<String, SQLiteStatement> statements;
+
+    /**
+     * 按数据库共用的写锁：不同DAO各自加锁时，A的事务中写B与B的事务会互相等待锁和连接而死锁
+     */
+    private static final Map<SQLiteDatabase, Object> sWriteLocks = new WeakHashMap<>();
+
+    private final Object writeLock;
+
+    public SQLiteDao(SQLiteDatabase db, String table, String[] projection) {
+        this(db, table, projection, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    public SQLiteDao(SQLiteDatabase db, String table, String[] projection, int statementCacheSize) {
+        this.db = db;
+        this.writeLock = writeLockOf(db);
+        this.table = table;
+        this.projection = projection == null ? null : projection.clone();
+        this.statements = new LruCache<String, SQLiteStatement>(statementCacheSize) {
+            @Override
+            protected void entryRemoved(boolean evicted, String key, SQLiteStatement oldValue,
+                                        SQLiteStatement newValue) {
+                oldValue.close();
+            }
+        };
+    }
+
+    private static Object writeLockOf(SQLiteDatabase db) {
+        synchronized (sWriteLocks) {
+            Object lock = sWriteLocks.get(db);
+            if (lock == null) {
+                lock = new Object();
+                sWriteLocks.put(db, lock);
+            }
+            return lock;
+        }
+    }
+
+    /**
+     * 开启WAL，读写可并发；对使用该数据库的所有连接生效，不能在事务中调用
+     *
+     * @return 是否开启成功，只读或内存数据库不支持
+     */
+    public boolean enableWriteAheadLogging() {
+        if (db.isReadOnly() || db.inTransaction()) {
+            return false;
+        }
+        try {
+            return db.enableWriteAheadLogging();
+        } catch (RuntimeException e) {
+            logger.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    public SQLiteDatabase getDatabase() {
+        return db;
+    }
+
+    /**
+     * 在一个事务中执行，body抛出异常时回滚
+     * <p>
+     * 先持有数据库的写锁再开启事务，与所有DAO的单条写加锁顺序一致；写事务请通过此方法而不是直接调用db.beginTransaction
+     */
+    @Override
+    public void runInTransaction(Runnable body) {
+        synchronized (writeLock) {
+            db.beginTransaction();
+            try {
+                body.run();
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * @return 新行的rowid
+     * @throws android.database.SQLException 插入失败，如违反约束
+     */
+    public long insert(ContentValues values) {
+        if (values.size() == 0) {
+            synchronized (writeLock) {
+                return db.insertOrThrow(table, null, values);
+            }
+        }
+        Set<String> columns = keys(values);
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        StringBuilder params = new StringBuilder();
+        for (String column : columns) {
+            if (params.length() > 0) {
+                sql.append(',');
+                params.append(',');
+            }
+            sql.append(column);
+            params.append('?');
+        }
+        sql.append(") VALUES (").append(params).append(')');
+
+        synchronized (writeLock) {
+            SQLiteStatement statement = statement(sql.toString());
+            bind(statement, values, columns, null);
+            return statement.executeInsert();
+        }
+    }
+
+    public long insert(Object bean) {
+        return insert(SqlUtil.getContentValues(bean));
+    }
+
+    /**
+     * 在一个事务中插入，返回插入的行数；任意一行失败时抛出SQLException，整批回滚
+     */
+    public int bulkInsert(final List<ContentValues> valuesList) {
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                for (ContentValues values : valuesList) {
+                    insert(values);
+                }
+            }
+        });
+        return valuesList.size();
+    }
+
+    /**
+     * @throws IllegalArgumentException values为空，与{@link SQLiteDatabase#update}一致
+     */
+    public int update(int id, ContentValues values) {
+        if (values == null || values.size() == 0) {
+            throw new IllegalArgumentException("Empty values");
+        }
+        Set<String> columns = keys(values);
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        boolean first = true;
+        for (String column : columns) {
+            if (!first) {
+                sql.append(',');
+            }
+            first = false;
+            sql.append(column).append("=?");
+        }
+        sql.append(" WHERE ").append(BaseColumns._ID).append("=?");
+
+        synchronized (writeLock) {
+            SQLiteStatement statement = statement(sql.toString());
+            bind(statement, values, columns, (long) id);
+            return statement.executeUpdateDelete();
+        }
+    }
+
+    public int update(ContentValues values, String where, String[] selectionArgs) {
+        synchronized (writeLock) {
+            return db.update(table, values, where, selectionArgs);
+        }
+    }
+
+    public int delete(int id) {
+        synchronized (writeLock) {
+            SQLiteStatement statement = statement("DELETE FROM " + table + " WHERE " + BaseColumns._ID + "=?");
+            statement.clearBindings();
+            statement.bindLong(1, id);
+            return statement.executeUpdateDelete();
+        }
+    }
+
+    public int deleteAll() {
+        return delete(null, null);
+    }
+
+    public void upsert(final ContentValues values, final String selection, final String[] selectionArgs) {
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                Cursor cursor = db.query(table, new String[]{BaseColumns._ID}, selection, selectionArgs,
+                        null, null, null, "1");
+                try {
+                    if (cursor != null && cursor.moveToFirst()) {
+                        update(cursor.getInt(0), values);
+                    } else {
+                        insert(values);
+                    }
+                } finally {
+                    DBUtil.closeQuietly(cursor);
+                }
+            }
+        });
+    }
+
+    protected Cursor query(String selection, String[] selectionArgs, String sortOrder) {
+        return db.query(table, projection, selection, selectionArgs, null, null, sortOrder);
+    }
+
+    protected <T> CursorIterable<T> iterate(String selection, String[] selectionArgs, String sortOrder,
+                                            Class<T> clazz, boolean reuseRow) {
+        return new CursorIterable<>(query(selection, selectionArgs, sortOrder), clazz, reuseRow);
+    }
+
+    protected int delete(String selection, String[] selectionArgs) {
+        synchronized (writeLock) {
+            return db.delete(table, selection, selectionArgs);
+        }
+    }
+
+    /**
+     * 关闭缓存的statement，不关闭db
+     */
+    public void close() {
+        synchronized (writeLock) {
+            statements.evictAll();
+        }
+    }
+
+    private SQLiteStatement statement(String sql) {
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    private static Set<String> keys(ContentValues values) {
+        Set<String> keys = new TreeSet<>();
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+
+    private static void bind(SQLiteStatement statement, ContentValues values, Set<String> columns, Long id) {
+        statement.clearBindings();
+        int index = 1;
+        for (String column : columns) {
+            Object value = values.get(column);
+            if (value == null) {
+                statement.bindNull(index);
+            } else if (value instanceof String) {
+                statement.bindString(index, (String) value);
+            } else if (value instanceof byte[]) {
+                statement.bindBlob(index, (byte[]) value);
+            } else if (value instanceof Float || value instanceof Double) {
+                statement.bindDouble(index, ((Number) value).doubleValue());
+            } else if (value instanceof Number) {
+                statement.bindLong(index, ((Number) value).longValue());
+            } else if (value instanceof Boolean) {
+                statement.bindLong(index, (Boolean) value ? 1 : 0);
+            } else {
+                statement.bindString(index, value.toString());
+            }
+            index++;
+        }
+        if (id != null) {
+            statement.bindLong(index, id);
+        }
+    }
+}
@@ -6,15 +6,10 @@ import org.slf4j.LoggerFactory;
 import android.content.ContentValues;
 import android.database.Cursor;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 public class SqlUtil {
 
@@ -49,40 +44,10 @@ public class SqlUtil {
     /**
      * 将实体类转换成ContentValues
      */
+    @SuppressWarnings("unchecked")
     public static ContentValues getContentValues(Object bean) {
-        ContentValues contentValues = new ContentValues();
-        Field[] fields = bean.getClass().getDeclaredFields();
-        for (Field field : fields) {
-            // String filedType = field.getGenericType().toString();
-            // if (String.class.toString().equals(object)) {
-            // }
-            field.setAccessible(true);
-            try {
-                Object object = field.get(bean);
-                if (object instanceof String) {
-                    contentValues.put(field.getName(), (String) object);
-                } else if (object instanceof Byte) {
-                    contentValues.put(field.getName(), (Byte) object);
-                } else if (object instanceof Short) {
-                    contentValues.put(field.getName(), (Short) object);
-                } else if (object instanceof Integer) {
-                    contentValues.put(field.getName(), (Integer) object);
-                } else if (object instanceof Long) {
-                    contentValues.put(field.getName(), (Long) object);
-                } else if (object instanceof Float) {
-                    contentValues.put(field.getName(), (Float) object);
-                } else if (object instanceof Double) {
-                    contentValues.put(field.getName(), (Double) object);
-                } else if (object instanceof Boolean) {
-                    contentValues.put(field.getName(), (Boolean) object);
-                } else if (object instanceof byte[]) {
-                    contentValues.put(field.getName(), (byte[]) object);
-                }
-            } catch (Exception e) {
-                logger.error(e.getMessage(), e);
-            }
-        }
-        return contentValues;
+        RowMapper<Object> mapper = (RowMapper<Object>) RowMapper.of(bean.getClass());
+        return mapper.toContentValues(bean);
     }
 
     /**
@@ -92,11 +57,9 @@ public class SqlUtil {
         if (cursor == null || cursor.getCount() == 0) {
             return null;
         }
-        T obj;
         try {
             cursor.moveToFirst();
-            obj = setValues2Fields(cursor, clazz);
-            return obj;
+            return RowMapper.of(clazz).bind(cursor).map();
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
             return null;
@@ -110,13 +73,12 @@ public class SqlUtil {
         if (c == null) {
             return null;
         }
-        List<T> list = new ArrayList<>();
-        T obj;
+        List<T> list = new ArrayList<>(Math.max(c.getCount(), 0));
         try {
+            RowMapper.Bound<T> bound = RowMapper.of(clazz).bind(c);
             c.moveToFirst();
             while (!c.isAfterLast()) {
-                obj = setValues2Fields(c, clazz);
-                list.add(obj);
+                list.add(bound.map());
                 c.moveToNext();
             }
             return list;
@@ -126,84 +88,6 @@ public class SqlUtil {
         }
     }
 
-    /**
-     * 把值设置进类属性里
-     */
-    @SuppressWarnings("rawtypes")
-    private static <T> T setValues2Fields(Cursor c, Class clazz) throws Exception {
-        String[] columnNames = c.getColumnNames();// 字段数组
-
-        Set<String> columnNameSets = new HashSet<String>();
-        Collections.addAll(columnNameSets, columnNames);
-
-        Constructor constructor = clazz.getDeclaredConstructor();
-        constructor.setAccessible(true);
-        T obj = (T) constructor.newInstance();
-        Field[] fields = clazz.getDeclaredFields();
-
-        for (Field _field : fields) {
-            Class<? extends Object> typeClass = _field.getType();// 属性类型
-            if (!columnNameSets.contains(_field.getName())) {
-                break;
-            }
-            typeClass = getBasicClass(typeClass);
-            if (isBasicType(typeClass)) {
-                String _str = c.getString(c.getColumnIndex(_field.getName()));
-//                if (_str == null) {
-//                    break;
-//                }
-                _str = (_str == null) ? "" : _str;
-
-                Constructor<? extends Object> cons = typeClass
-                        .getConstructor(String.class);
-                Object attribute = cons.newInstance(_str);
-                _field.setAccessible(true);
-                _field.set(obj, attribute);
-            } else if (isArrayType(typeClass)) {
-                byte[] attribute = c
-                        .getBlob(c.getColumnIndex(_field.getName()));
-                if (attribute == null) {
-                    break;
-                }
-                _field.setAccessible(true);
-                _field.set(obj, attribute);
-            } else {
-                Object obj2 = setValues2Fields(c, typeClass);// 递归
-                _field.set(obj, obj2);
-                break;
-            }
-
-        }
-        return obj;
-    }
-
-    /**
-     * 判断是不是基本类型
-     */
-    @SuppressWarnings("rawtypes")
-    private static boolean isBasicType(Class typeClass) {
-        if (typeClass.equals(Integer.class)
-                || typeClass.equals(Long.class)
-                || typeClass.equals(Float.class)
-                || typeClass.equals(Double.class)
-                || typeClass.equals(Boolean.class)
-                || typeClass.equals(Byte.class)
-                || typeClass.equals(Short.class)
-                || typeClass.equals(String.class)) {
-            return true;
-
-        } else {
-            return false;
-        }
-    }
-
-    /**
-     * 判断是否是byte[]
-     */
-    private static boolean isArrayType(Class<?> typeClass) {
-        return byte[].class.equals(typeClass);
-    }
-
     /**
      * 获得包装类
      */
@@ -0,0 +1,391 @@
+package cm.android.common.http;
+
+import com.jakewharton.disklrucache.DiskLruCache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+
+import cm.android.common.cache.disk.cache.HttpStreamCache;
+import cm.android.common.cache.disk.entry.HttpResponseEntry;
+import cm.java.util.IoUtil;
+import okhttp3.CacheControl;
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+/**
+ * 基于{@link HttpStreamCache}的GET响应缓存，作为应用层interceptor使用，命中时不访问网络：
+ * <p>
+ * - 按响应的Cache-Control/Expires/Last-Modified及请求的Cache-Control判断是否新鲜
+ * - 过期但有ETag/Last-Modified时发送条件请求，304时使用缓存内容并更新元数据
+ * - 响应内容边读边写入缓存，读完才提交，中途关闭则放弃
+ * - only-if-cached或离线模式下只使用缓存（不论是否过期），无缓存时返回504
+ * - 非GET请求使对应url的缓存失效；带Vary的响应不缓存
+ */
+public class CacheInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger("http");
+
+    private static final int CODE_UNSATISFIABLE = 504;
+
+    private final HttpStreamCache cache;
+
+    private volatile boolean offline;
+
+    public CacheInterceptor(HttpStreamCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * 离线模式：所有GET请求按only-if-cached处理
+     */
+    public void setOffline(boolean offline) {
+        this.offline = offline;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String key = HttpStreamCache.key(request.url().toString());
+
+        if (!"GET".equals(request.method())) {
+            try {
+                return chain.proceed(request);
+            } finally {
+                //请求失败时服务端可能已经修改，同样失效
+                if (!"HEAD".equals(request.method())) {
+                    cache.delete(key);
+                }
+            }
+        }
+
+        CacheControl requestControl = request.cacheControl();
+        if (requestControl.noStore()) {
+            return chain.proceed(request);
+        }
+
+        DiskLruCache.Snapshot snapshot = cache.getSnapshot(key);
+        HttpResponseEntry entry = readEntry(key, snapshot);
+        if (entry == null) {
+            IoUtil.closeQuietly(snapshot);
+            snapshot = null;
+        }
+
+        long now = System.currentTimeMillis();
+        if (offline || requestControl.onlyIfCached()) {
+            if (entry == null) {
+                return new Response.Builder()
+                        .request(request)
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(CODE_UNSATISFIABLE)
+                        .message("Unsatisfiable Request (only-if-cached)")
+                        .body(ResponseBody.create(null, new byte[0]))
+                        .sentRequestAtMillis(-1L)
+                        .receivedResponseAtMillis(now)
+                        .build();
+            }
+            return cacheResponse(request, entry, entry.getHeaders(), snapshot, !isFresh(entry, requestControl, now));
+        }
+
+        if (entry != null && isFresh(entry, requestControl, now)) {
+            return cacheResponse(request, entry, entry.getHeaders(), snapshot, false);
+        }
+
+        Request networkRequest = request;
+        if (entry != null) {
+            networkRequest = conditionalRequest(request, entry);
+            if (networkRequest == null) {
+                snapshot.close();
+                snapshot = null;
+                entry = null;
+                networkRequest = request;
+            }
+        }
+
+        Response networkResponse;
+        try {
+            networkResponse = chain.proceed(networkRequest);
+        } catch (IOException e) {
+            IoUtil.closeQuietly(snapshot);
+            throw e;
+        }
+
+        if (entry != null && networkResponse.code() == 304) {
+            networkResponse.body().close();
+            Headers headers = combine(entry.getHeaders(), networkResponse.headers());
+            HttpResponseEntry updated = new HttpResponseEntry(entry.getUrl(), entry.getCode(), entry.getMessage(),
+                    headers, networkResponse.sentRequestAtMillis(), networkResponse.receivedResponseAtMillis());
+            updateMetadata(snapshot, updated);
+            return cacheResponse(request, updated, headers, snapshot, false);
+        }
+        IoUtil.closeQuietly(snapshot);
+
+        if (!isCacheable(request, networkResponse)) {
+            return networkResponse;
+        }
+        return cacheWriting(key, networkResponse);
+    }
+
+    /**
+     * 元数据和内容从同一个snapshot读取，避免读到两次写入各自的一半
+     */
+    private HttpResponseEntry readEntry(String key, DiskLruCache.Snapshot snapshot) {
+        if (snapshot == null) {
+            return null;
+        }
+        try {
+            return cache.readFrom(snapshot);
+        } catch (IOException | RuntimeException e) {
+            logger.error("CacheInterceptor:readEntry:key = " + key, e);
+            return null;
+        }
+    }
+
+    private static boolean isFresh(HttpResponseEntry entry, CacheControl requestControl, long now) {
+        CacheControl responseControl = CacheControl.parse(entry.getHeaders());
+        if (responseControl.noCache() || requestControl.noCache()) {
+            return false;
+        }
+
+        Headers headers = entry.getHeaders();
+        Date served = headers.getDate("Date");
+        long received = entry.getReceivedResponseMillis();
+        long apparentAge = served == null ? 0 : Math.max(0, received - served.getTime());
+        String ageHeader = headers.get("Age");
+        if (ageHeader != null) {
+            try {
+                apparentAge = Math.max(apparentAge, Long.parseLong(ageHeader) * 1000);
+            } catch (NumberFormatException ignore) {
+            }
+        }
+        long age = apparentAge + Math.max(0, now - received);
+
+        long freshness = 0;
+        long servedMillis = served == null ? received : served.getTime();
+        if (responseControl.maxAgeSeconds() != -1) {
+            freshness = responseControl.maxAgeSeconds() * 1000L;
+        } else if (headers.getDate("Expires") != null) {
+            freshness = Math.max(0, headers.getDate("Expires").getTime() - servedMillis);
+        } else if (headers.getDate("Last-Modified") != null && entry.getUrl().indexOf('?') < 0) {
+            //启发式新鲜度，RFC 7234建议为(Date - Last-Modified)的10%
+            freshness = Math.max(0, (servedMillis - headers.getDate("Last-Modified").getTime()) / 10);
+        }
+        if (requestControl.maxAgeSeconds() != -1) {
+            freshness = Math.min(freshness, requestControl.maxAgeSeconds() * 1000L);
+        }
+
+        long minFresh = requestControl.minFreshSeconds() == -1 ? 0 : requestControl.minFreshSeconds() * 1000L;
+        long maxStale = 0;
+        if (!responseControl.mustRevalidate() && requestControl.maxStaleSeconds() != -1) {
+            maxStale = requestControl.maxStaleSeconds() * 1000L;
+        }
+        return age + minFresh < freshness + maxStale;
+    }
+
+    /**
+     * 缓存有校验信息时返回条件请求，否则返回null
+     */
+    private static Request conditionalRequest(Request request, HttpResponseEntry entry) {
+        if (request.header("If-None-Match") != null || request.header("If-Modified-Since") != null) {
+            return null;
+        }
+        String etag = entry.getHeaders().get("ETag");
+        if (etag != null) {
+            return request.newBuilder().header("If-None-Match", etag).build();
+        }
+        String lastModified = entry.getHeaders().get("Last-Modified");
+        if (lastModified != null) {
+            return request.newBuilder().header("If-Modified-Since", lastModified).build();
+        }
+        return null;
+    }
+
+    private static boolean isCacheable(Request request, Response response) {
+        if (response.code() != 200) {
+            return false;
+        }
+        CacheControl responseControl = response.cacheControl();
+        if (responseControl.noStore() || request.cacheControl().noStore()) {
+            return false;
+        }
+        if (response.header("Vary") != null) {
+            return false;
+        }
+        if (request.header("Authorization") != null && !responseControl.isPublic()) {
+            return false;
+        }
+        return responseControl.maxAgeSeconds() != -1
+                || response.header("Expires") != null
+                || response.header("ETag") != null
+                || response.header("Last-Modified") != null;
+    }
+
+    private static Headers combine(Headers cached, Headers network) {
+        Headers.Builder builder = cached.newBuilder();
+        for (int i = 0; i < network.size(); i++) {
+            String name = network.name(i);
+            if ("Content-Length".equalsIgnoreCase(name)
+                    || "Content-Encoding".equalsIgnoreCase(name)
+                    || "Content-Type".equalsIgnoreCase(name)) {
+                continue;
+            }
+            builder.set(name, network.value(i));
+        }
+        return builder.build();
+    }
+
+    private void updateMetadata(DiskLruCache.Snapshot snapshot, HttpResponseEntry entry) {
+        DiskLruCache.Editor editor = null;
+        try {
+            editor = snapshot.edit();
+            if (editor != null) {
+                entry.writeTo(editor);
+                editor.commit();
+            }
+        } catch (IOException e) {
+            abortQuietly(editor);
+        }
+    }
+
+    private static Response cacheResponse(Request request, HttpResponseEntry entry, Headers headers,
+                                          final DiskLruCache.Snapshot snapshot, boolean stale) {
+        InputStream in = snapshot.getInputStream(HttpStreamCache.ENTRY_BODY);
+        BufferedSource source = Okio.buffer(new ForwardingSource(Okio.source(in)) {
+            @Override
+            public void close() throws IOException {
+                snapshot.close();
+                super.close();
+            }
+        });
+        String contentType = headers.get("Content-Type");
+        ResponseBody body = ResponseBody.create(contentType == null ? null : MediaType.parse(contentType),
+                snapshot.getLength(HttpStreamCache.ENTRY_BODY), source);
+
+        Response.Builder builder = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(entry.getCode())
+                .message(entry.getMessage())
+                .headers(headers)
+                .body(body)
+                .sentRequestAtMillis(entry.getSentRequestMillis())
+                .receivedResponseAtMillis(entry.getReceivedResponseMillis());
+        if (stale) {
+            builder.addHeader("Warning", "110 HttpURLConnection \"Response is stale\"");
+        }
+        return builder.build();
+    }
+
+    /**
+     * 读取响应内容的同时写入缓存
+     */
+    private Response cacheWriting(String key, Response response) {
+        final DiskLruCache.Editor editor = cache.edit(key);
+        if (editor == null) {
+            return response;
+        }
+
+        final BufferedSink cacheSink;
+        try {
+            HttpResponseEntry entry = new HttpResponseEntry(response.request().url().toString(), response.code(),
+                    response.message(), response.headers(), response.sentRequestAtMillis(),
+                    response.receivedResponseAtMillis());
+            entry.writeTo(editor);
+            cacheSink = Okio.buffer(Okio.sink(editor.newOutputStream(HttpStreamCache.ENTRY_BODY)));
+        } catch (IOException e) {
+            abortQuietly(editor);
+            return response;
+        }
+
+        final ResponseBody networkBody = response.body();
+        final BufferedSource networkSource = networkBody.source();
+        Source tee = new Source() {
+            private boolean done;
+
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read;
+                try {
+                    read = networkSource.read(sink, byteCount);
+                } catch (IOException e) {
+                    finish(false);
+                    throw e;
+                }
+
+                if (read == -1) {
+                    finish(true);
+                    return -1;
+                }
+
+                if (!done) {
+                    try {
+                        sink.copyTo(cacheSink.buffer(), sink.size() - read, read);
+                        cacheSink.emitCompleteSegments();
+                    } catch (IOException e) {
+                        //缓存写失败不影响请求
+                        finish(false);
+                    }
+                }
+                return read;
+            }
+
+            @Override
+            public Timeout timeout() {
+                return networkSource.timeout();
+            }
+
+            @Override
+            public void close() throws IOException {
+                finish(false);
+                networkSource.close();
+            }
+
+            private void finish(boolean success) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                try {
+                    cacheSink.close();
+                    if (success) {
+                        editor.commit();
+                    } else {
+                        editor.abort();
+                    }
+                } catch (IOException e) {
+                    logger.error("CacheInterceptor:finish:success = " + success, e);
+                    abortQuietly(editor);
+                }
+            }
+        };
+
+        ResponseBody body = ResponseBody.create(networkBody.contentType(), networkBody.contentLength(),
+                Okio.buffer(tee));
+        return response.newBuilder().body(body).build();
+    }
+
+    private static void abortQuietly(DiskLruCache.Editor editor) {
+        if (editor == null) {
+            return;
+        }
+        try {
+            editor.abort();
+        } catch (IOException ignore) {
+        }
+    }
+}
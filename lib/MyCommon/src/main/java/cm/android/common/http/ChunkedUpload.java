@@ -0,0 +1,181 @@
+package cm.android.common.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 分段上传大文件，可断点续传：
+ * <p>
+ * - 每段以PUT和Content-Range: bytes start-end/total发送，内容直接从文件读取
+ * - 中间段的响应为308或2xx；带Range: bytes=0-N时以服务端确认的位置为准，超出已发送的范围视为错误
+ * - 失败时{@link #getOffset()}为已确认的位置，保存后可通过{@link #setOffset(long)}续传
+ * - PUT是幂等的，单段失败由{@link RetryInterceptor}重试
+ */
+public class ChunkedUpload {
+
+    private static final Logger logger = LoggerFactory.getLogger("http");
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private static final int CODE_RESUME_INCOMPLETE = 308;
+
+    private static final int MAX_NO_PROGRESS = 3;
+
+    public interface Listener {
+        /**
+         * 每段上传成功后在上传线程回调，可在此保存offset
+         */
+        void onProgress(long offset, long total);
+    }
+
+    private final OkHttpClient client;
+
+    private final String url;
+
+    private final File file;
+
+    private final MediaType contentType;
+
+    private final int chunkSize;
+
+    private volatile long offset;
+
+    private volatile boolean canceled;
+
+    private Listener listener;
+
+    public ChunkedUpload(Http.Profile profile, String url, File file, MediaType contentType) {
+        this(Http.getClient(profile), url, file, contentType, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkedUpload(OkHttpClient client, String url, File file, MediaType contentType, int chunkSize) {
+        this.client = client;
+        this.url = url;
+        this.file = file;
+        this.contentType = contentType;
+        this.chunkSize = chunkSize;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * 从保存的位置续传
+     *
+     * @throws IllegalArgumentException offset小于0或超过文件长度
+     */
+    public void setOffset(long offset) {
+        if (offset < 0 || offset > file.length()) {
+            throw new IllegalArgumentException("offset = " + offset + ",length = " + file.length());
+        }
+        this.offset = offset;
+    }
+
+    /**
+     * 当前段发送完后停止，{@link #upload(Headers)}抛出IOException。
+     * 取消后不能再次上传，续传时以{@link #getOffset()}新建ChunkedUpload
+     */
+    public void cancel() {
+        canceled = true;
+    }
+
+    /**
+     * 同步上传剩余部分，返回最后一段的响应，调用方负责关闭
+     */
+    public Response upload(Headers headers) throws IOException {
+        long total = file.length();
+        long start = System.currentTimeMillis();
+        long startOffset = offset;
+        int noProgress = 0;
+
+        while (true) {
+            if (canceled) {
+                throw new IOException("Canceled:offset = " + offset);
+            }
+
+            long length = Math.min(chunkSize, total - offset);
+            Request.Builder builder = new Request.Builder().url(url);
+            if (headers != null) {
+                builder.headers(headers);
+            }
+            String range = length == 0 ? "bytes */" + total
+                    : "bytes " + offset + "-" + (offset + length - 1) + "/" + total;
+            Request request = builder
+                    .header("Content-Range", range)
+                    .put(StreamBody.create(contentType, file, offset, length))
+                    .build();
+
+            Response response = client.newCall(request).execute();
+            int code = response.code();
+            boolean last = offset + length >= total;
+            if (response.isSuccessful() && last) {
+                offset = total;
+                notifyProgress(total);
+                long elapsed = Math.max(1, System.currentTimeMillis() - start);
+                logger.info("ChunkedUpload:done:url = {},bytes = {},elapsed = {}ms,speed = {}KB/s",
+                        url, total - startOffset, elapsed, (total - startOffset) / elapsed);
+                return response;
+            }
+            if (code != CODE_RESUME_INCOMPLETE && !response.isSuccessful()) {
+                response.body().close();
+                throw new IOException("code = " + code + ",offset = " + offset);
+            }
+
+            long acknowledged = acknowledgedOffset(response.header("Range"));
+            response.body().close();
+            if (acknowledged > offset + length) {
+                throw new IOException("invalid Range ack:acknowledged = " + acknowledged
+                        + ",sent = " + (offset + length) + ",total = " + total);
+            }
+            long next = acknowledged >= 0 ? acknowledged : offset + length;
+            if (next <= offset && ++noProgress >= MAX_NO_PROGRESS) {
+                throw new IOException("no progress:offset = " + offset);
+            }
+            if (next > offset) {
+                noProgress = 0;
+            }
+            offset = next;
+            notifyProgress(total);
+        }
+    }
+
+    private void notifyProgress(long total) {
+        Listener l = listener;
+        if (l != null) {
+            l.onProgress(offset, total);
+        }
+    }
+
+    /**
+     * Range: bytes=0-N，返回N+1；没有、无法解析或N为负时返回-1
+     */
+    private static long acknowledgedOffset(String range) {
+        if (range == null || !range.startsWith("bytes=")) {
+            return -1;
+        }
+        int index = range.indexOf('-');
+        if (index < 0) {
+            return -1;
+        }
+        try {
+            long last = Long.parseLong(range.substring(index + 1).trim());
+            return last >= 0 ? last + 1 : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
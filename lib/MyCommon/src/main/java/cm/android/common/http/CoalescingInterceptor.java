@@ -0,0 +1,208 @@
+package cm.android.common.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * 合并同时进行的相同GET请求，作为应用层interceptor使用：
+ * <p>
+ * - key由method、url和全部请求头组成，请求头不同（如Accept、Authorization）的请求不会合并
+ * - 第一个请求访问网络并把响应内容读入内存，其余请求等待并各自得到一份副本
+ * - 响应内容超过maxBodySize时不合并，等待的请求各自访问网络
+ * - 第一个请求被取消或中断时，等待的请求各自访问网络；其他失败时每个等待的请求各自抛出一个以其为cause的异常
+ * - 最多等待maxWaitMillis，超时后各自访问网络；OkHttp 3.4的Chain拿不到Call，
+ * 等待中的请求被取消后，在等待结束、各自访问网络时以"Canceled"失败；线程中断立即生效
+ */
+public class CoalescingInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger("http");
+
+    static final long DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+
+    private static final long DEFAULT_MAX_WAIT = 60 * 1000;
+
+    private final long maxBodySize;
+
+    private final long maxWaitMillis;
+
+    private final Map<String, InFlight> inFlights = new HashMap<>();
+
+    private long coalesced;
+
+    public CoalescingInterceptor() {
+        this(DEFAULT_MAX_BODY_SIZE, DEFAULT_MAX_WAIT);
+    }
+
+    public CoalescingInterceptor(long maxBodySize) {
+        this(maxBodySize, DEFAULT_MAX_WAIT);
+    }
+
+    /**
+     * @param maxWaitMillis 等待第一个请求的最长时间，一般取client的超时之和乘以重试次数
+     */
+    public CoalescingInterceptor(long maxBodySize, long maxWaitMillis) {
+        this.maxBodySize = maxBodySize;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!"GET".equals(request.method())) {
+            return chain.proceed(request);
+        }
+
+        String key = key(request);
+        InFlight inFlight;
+        boolean leader = false;
+        synchronized (inFlights) {
+            inFlight = inFlights.get(key);
+            if (inFlight == null) {
+                inFlight = new InFlight();
+                inFlights.put(key, inFlight);
+                leader = true;
+            } else {
+                coalesced++;
+            }
+        }
+
+        if (leader) {
+            return lead(chain, key, inFlight);
+        }
+        return follow(chain, inFlight);
+    }
+
+    private Response lead(Chain chain, String key, InFlight inFlight) throws IOException {
+        Response response = null;
+        IOException error = null;
+        try {
+            response = chain.proceed(chain.request());
+            Buffer body = readBody(response.body());
+            if (body == null) {
+                //内容过大，不共享
+                return response;
+            }
+            inFlight.response = response;
+            inFlight.body = body;
+            return copy(response, chain.request(), body);
+        } catch (IOException e) {
+            error = e;
+            throw e;
+        } catch (RuntimeException e) {
+            error = new IOException(e);
+            throw e;
+        } finally {
+            synchronized (inFlights) {
+                inFlights.remove(key);
+            }
+            inFlight.error = error;
+            inFlight.latch.countDown();
+        }
+    }
+
+    private Response follow(Chain chain, InFlight inFlight) throws IOException {
+        boolean done;
+        try {
+            done = inFlight.latch.await(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("coalesced request interrupted");
+        }
+
+        if (!done) {
+            logger.info("CoalescingInterceptor:timeout:url = {}", chain.request().url());
+        } else if (inFlight.error != null) {
+            if (!isCanceled(inFlight.error)) {
+                throw wrap(inFlight.error);
+            }
+        } else if (inFlight.body != null) {
+            return copy(inFlight.response, chain.request(), inFlight.body);
+        }
+        logger.info("CoalescingInterceptor:fallback:url = {}", chain.request().url());
+        return chain.proceed(chain.request());
+    }
+
+    /**
+     * 第一个请求被取消（"Canceled"或关闭socket）或线程被中断，与等待的请求无关
+     */
+    private static boolean isCanceled(IOException e) {
+        return RetryInterceptor.isCanceled(e)
+                || (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException));
+    }
+
+    /**
+     * 每个等待的请求各自一个异常，保留超时类型
+     */
+    private static IOException wrap(IOException error) {
+        String message = "coalesced request failed:" + error.getMessage();
+        IOException e = error instanceof SocketTimeoutException
+                ? new SocketTimeoutException(message) : new IOException(message);
+        e.initCause(error);
+        return e;
+    }
+
+    /**
+     * 读取全部内容，超过maxBodySize时返回null，此时body保持可读
+     */
+    private Buffer readBody(ResponseBody body) throws IOException {
+        if (body.contentLength() > maxBodySize) {
+            return null;
+        }
+        BufferedSource source = body.source();
+        if (!source.request(maxBodySize + 1)) {
+            Buffer buffer = new Buffer();
+            buffer.writeAll(source);
+            body.close();
+            return buffer;
+        }
+        //contentLength未知且超过上限，已读部分留在source的缓冲中
+        return null;
+    }
+
+    private static Response copy(Response response, Request request, Buffer body) {
+        return response.newBuilder()
+                .request(request)
+                .body(ResponseBody.create(response.body().contentType(), body.size(), body.clone()))
+                .build();
+    }
+
+    private static String key(Request request) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(request.method()).append(' ').append(request.url());
+        Headers headers = request.headers();
+        for (String name : new TreeSet<>(headers.names())) {
+            builder.append('\n').append(name).append(':').append(headers.values(name));
+        }
+        return builder.toString();
+    }
+
+    public long getCoalescedCount() {
+        synchronized (inFlights) {
+            return coalesced;
+        }
+    }
+
+    private static final class InFlight {
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile Response response;
+        volatile Buffer body;
+        volatile IOException error;
+    }
+}
@@ -11,12 +11,16 @@ import okio.BufferedSink;
 import okio.GzipSink;
 import okio.Okio;
 
+/**
+ * 压缩请求体；已有Content-Encoding或带Content-Range（分段上传，offset按原始内容计算）的请求不压缩
+ */
 public class GzipRequestInterceptor implements Interceptor {
 
     @Override
     public Response intercept(Chain chain) throws IOException {
         Request originalRequest = chain.request();
-        if (originalRequest.body() == null || originalRequest.header(Http.CONTENT_ENCODING) != null) {
+        if (originalRequest.body() == null || originalRequest.header(Http.CONTENT_ENCODING) != null
+                || originalRequest.header("Content-Range") != null) {
             return chain.proceed(originalRequest);
         }
 
@@ -3,11 +3,21 @@ package cm.android.common.http;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import android.os.Process;
 import android.support.annotation.Nullable;
 
+import java.io.File;
 import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.KeyManagerFactory;
@@ -16,13 +26,17 @@ import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 
+import cm.android.common.cache.disk.cache.HttpStreamCache;
 import cm.android.net.HttpsUtil;
+import cm.android.thread.PriorityThreadFactory;
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.ConnectionPool;
 import okhttp3.Dispatcher;
 import okhttp3.Headers;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
@@ -47,37 +61,249 @@ public final class Http {
 
     public static final Logger logger = LoggerFactory.getLogger("http");
 
-    private static OkHttpClient config() {
-//        client.setCache(new Cache(context.getCacheDir(), maxCacheSize));
-//        client.newBuilder().connectTimeout().build();
+    /**
+     * 客户端配置，不同profile共用连接池和线程池，超时、并发数和协议各自独立
+     */
+    public enum Profile {
+        /**
+         * 普通接口请求
+         */
+        API,
+        /**
+         * 大文件下载，只用HTTP/1.1以便多连接并行，超时较长
+         */
+        DOWNLOAD,
+        /**
+         * 实时请求，超时短且不重试
+         */
+        REALTIME
+    }
+
+    public static final class ProfileConfig {
+        private long connectTimeout = DEFAULT_TIMEOUT;
+        private long readTimeout = 30 * 1000;
+        private long writeTimeout = 30 * 1000;
+        private int maxRequests = DEFAULT_MAX_REQUEST;
+        private int maxRequestsPerHost = 5;
+        private int retryCount = 2;
+        private boolean useCache = true;
+        private boolean coalesce = false;
+        private boolean gzipRequest = false;
+        private List<Protocol> protocols = Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
+
+        public ProfileConfig timeouts(long connectMillis, long readMillis, long writeMillis) {
+            this.connectTimeout = connectMillis;
+            this.readTimeout = readMillis;
+            this.writeTimeout = writeMillis;
+            return this;
+        }
+
+        public ProfileConfig maxRequests(int maxRequests, int maxRequestsPerHost) {
+            this.maxRequests = maxRequests;
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        public ProfileConfig retryCount(int retryCount) {
+            this.retryCount = retryCount;
+            return this;
+        }
+
+        /**
+         * 是否使用{@link #configureCache(File, long)}配置的响应缓存
+         */
+        public ProfileConfig useCache(boolean useCache) {
+            this.useCache = useCache;
+            return this;
+        }
+
+        /**
+         * 是否合并同时进行的相同GET请求，见{@link CoalescingInterceptor}
+         */
+        public ProfileConfig coalesce(boolean coalesce) {
+            this.coalesce = coalesce;
+            return this;
+        }
+
+        /**
+         * 是否用{@link GzipRequestInterceptor}压缩请求体，服务端需支持Content-Encoding: gzip
+         */
+        public ProfileConfig gzipRequest(boolean gzipRequest) {
+            this.gzipRequest = gzipRequest;
+            return this;
+        }
+
+        public ProfileConfig protocols(Protocol... protocols) {
+            this.protocols = Arrays.asList(protocols);
+            return this;
+        }
+    }
+
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+
+    private static final long DEFAULT_KEEP_ALIVE = 5 * 60 * 1000L;
+
+    private static ConnectionPool sConnectionPool;
+
+    private static ExecutorService sExecutor;
+
+    private static final Map<Profile, ProfileConfig> sConfigs = new EnumMap<>(Profile.class);
+
+    private static final Map<Profile, OkHttpClient> sClients = new EnumMap<>(Profile.class);
+
+    private static final Map<Profile, RequestScheduler> sSchedulers = new EnumMap<>(Profile.class);
+
+    static {
+        sConfigs.put(Profile.API, new ProfileConfig());
+        sConfigs.put(Profile.DOWNLOAD, new ProfileConfig()
+                .timeouts(DEFAULT_TIMEOUT, 60 * 1000, 60 * 1000)
+                .maxRequests(8, 4)
+                .useCache(false)
+                .protocols(Protocol.HTTP_1_1));
+        sConfigs.put(Profile.REALTIME, new ProfileConfig()
+                .timeouts(5 * 1000, 10 * 1000, 10 * 1000)
+                .retryCount(0)
+                .useCache(false));
+    }
+
+    private static CacheInterceptor sCacheInterceptor;
+
+    /**
+     * 开启GET响应的磁盘缓存，见{@link CacheInterceptor}，已创建的client会重建
+     */
+    public static synchronized void configureCache(File directory, long maxSize) throws IOException {
+        sCacheInterceptor = new CacheInterceptor(new HttpStreamCache(directory, maxSize));
+        sClients.clear();
+        client = null;
+    }
+
+    /**
+     * 离线模式下GET请求只使用缓存，需先{@link #configureCache(File, long)}
+     */
+    public static synchronized void setOffline(boolean offline) {
+        if (sCacheInterceptor != null) {
+            sCacheInterceptor.setOffline(offline);
+        }
+    }
+
+    /**
+     * 设置共享连接池的大小和keep-alive时间，已创建的client会重建
+     */
+    public static synchronized void configureConnectionPool(int maxIdleConnections, long keepAliveMillis) {
+        sConnectionPool = new ConnectionPool(maxIdleConnections, keepAliveMillis, TimeUnit.MILLISECONDS);
+        sClients.clear();
+        client = null;
+    }
+
+    /**
+     * 修改profile的配置，该profile的client会重建
+     */
+    public static synchronized void configure(Profile profile, ProfileConfig config) {
+        sConfigs.put(profile, config);
+        sClients.remove(profile);
+        sSchedulers.remove(profile);
+        if (profile == Profile.API) {
+            client = null;
+        }
+    }
+
+    public static synchronized ConnectionPool getConnectionPool() {
+        if (sConnectionPool == null) {
+            sConnectionPool = new ConnectionPool(DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE,
+                    TimeUnit.MILLISECONDS);
+        }
+        return sConnectionPool;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            //与OkHttp默认Dispatcher的线程池一致，并发数由各profile的Dispatcher限制
+            sExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(),
+                    new PriorityThreadFactory("http", Process.THREAD_PRIORITY_BACKGROUND));
+        }
+        return sExecutor;
+    }
+
+    public static synchronized OkHttpClient getClient(Profile profile) {
+        OkHttpClient profileClient = sClients.get(profile);
+        if (profileClient == null) {
+            profileClient = config(sConfigs.get(profile));
+            sClients.put(profile, profileClient);
+        }
+        return profileClient;
+    }
+
+    /**
+     * 异步请求的优先级调度，并发数与profile的maxRequests一致
+     */
+    public static synchronized RequestScheduler getScheduler(Profile profile) {
+        RequestScheduler scheduler = sSchedulers.get(profile);
+        if (scheduler == null) {
+            scheduler = new RequestScheduler(sConfigs.get(profile).maxRequests);
+            sSchedulers.put(profile, scheduler);
+        }
+        return scheduler;
+    }
+
+    /**
+     * 带优先级的tag，见{@link RequestScheduler}
+     */
+    public static Object tag(Object tag, RequestScheduler.Priority priority) {
+        return new RequestScheduler.PriorityTag(tag, priority);
+    }
+
+    private static OkHttpClient config(ProfileConfig config) {
         OkHttpClient.Builder builder = new OkHttpClient().newBuilder();
-//        builder.cache(new Cache(context.getCacheDir(), 50 * 1024 * 1024L));
 
-        Dispatcher dispatcher = new Dispatcher();
-        dispatcher.setMaxRequests(DEFAULT_MAX_REQUEST);
+        Dispatcher dispatcher = new Dispatcher(getExecutor());
+        dispatcher.setMaxRequests(config.maxRequests);
+        dispatcher.setMaxRequestsPerHost(config.maxRequestsPerHost);
         builder.dispatcher(dispatcher);
-        builder.connectTimeout(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
-//        builder.readTimeout(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+        builder.connectionPool(getConnectionPool());
+        builder.protocols(config.protocols);
+        builder.connectTimeout(config.connectTimeout, TimeUnit.MILLISECONDS);
+        builder.readTimeout(config.readTimeout, TimeUnit.MILLISECONDS);
+        builder.writeTimeout(config.writeTimeout, TimeUnit.MILLISECONDS);
 //        builder.retryOnConnectionFailure(true);
 
         //gzip
 //        builder.addInterceptor(new GzipInterceptor());
-        builder.addInterceptor(new RetryInterceptor(2));
+        if (config.coalesce) {
+            //第一个请求包括重试在内的最长耗时
+            long maxWait = (config.connectTimeout + config.writeTimeout + config.readTimeout)
+                    * (Math.max(0, config.retryCount) + 1);
+            builder.addInterceptor(new CoalescingInterceptor(CoalescingInterceptor.DEFAULT_MAX_BODY_SIZE, maxWait));
+        }
+        if (config.useCache && sCacheInterceptor != null) {
+            builder.addInterceptor(sCacheInterceptor);
+        }
+        if (config.retryCount > 0) {
+            builder.addInterceptor(new RetryInterceptor(config.retryCount));
+        }
+        if (config.gzipRequest) {
+            builder.addInterceptor(new GzipRequestInterceptor());
+        }
 
         return builder.build();
     }
 
     private static volatile OkHttpClient client;
 
+    /**
+     * API profile的client，读取不加锁；在锁内发布，不会覆盖重新配置时的清空
+     */
     public static OkHttpClient getClient() {
-        if (client == null) {
-            synchronized (Http.class) {
-                if (client == null) {
-                    client = config();
-                }
+        OkHttpClient apiClient = client;
+        if (apiClient != null) {
+            return apiClient;
+        }
+        synchronized (Http.class) {
+            if (client == null) {
+                client = getClient(Profile.API);
             }
+            return client;
         }
-        return client;
     }
 
     public static HttpLoggingInterceptor createLogging(boolean debug) {
@@ -97,19 +323,39 @@ public final class Http {
         return loggingInterceptor;
     }
 
+    /**
+     * 取消所有请求，只处理已创建的client和调度器，不会为此新建
+     */
     public void cancel() {
-        getClient().dispatcher().cancelAll();
+        List<RequestScheduler> schedulers;
+        List<OkHttpClient> clients;
+        synchronized (Http.class) {
+            schedulers = new ArrayList<>(sSchedulers.values());
+            clients = new ArrayList<>(sClients.values());
+        }
+        for (RequestScheduler scheduler : schedulers) {
+            scheduler.cancelAll();
+        }
+        for (OkHttpClient profileClient : clients) {
+            profileClient.dispatcher().cancelAll();
+        }
     }
 
     public static void cancelTag(OkHttpClient client, Object tag) {
+        tag = RequestScheduler.unwrapTag(tag);
+        synchronized (Http.class) {
+            for (RequestScheduler scheduler : sSchedulers.values()) {
+                scheduler.cancelTag(tag);
+            }
+        }
         for (Call call : client.dispatcher().queuedCalls()) {
-            if (tag.equals(call.request().tag())) {
+            if (tag.equals(RequestScheduler.unwrapTag(call.request().tag()))) {
                 call.cancel();
                 return;
             }
         }
         for (Call call : client.dispatcher().runningCalls()) {
-            if (tag.equals(call.request().tag())) {
+            if (tag.equals(RequestScheduler.unwrapTag(call.request().tag()))) {
                 call.cancel();
                 return;
             }
@@ -117,6 +363,14 @@ public final class Http {
     }
 
     private static Request createRequest(final Object tag, String url, Headers headers, byte[] body) {
+        RequestBody requestBody = body == null ? null : RequestBody.create(MEDIA_TYPE_TEXT, body);
+        return createRequest(tag, url, headers, requestBody);
+    }
+
+    /**
+     * @param body 流式请求体见{@link StreamBody}，为null时是GET
+     */
+    private static Request createRequest(final Object tag, String url, Headers headers, RequestBody body) {
         Request.Builder builder = new Request.Builder();
         builder.url(url);
         if (tag != null) {
@@ -124,8 +378,7 @@ public final class Http {
         }
 
         if (body != null) {
-            RequestBody requestBody = RequestBody.create(MEDIA_TYPE_TEXT, body);
-            builder.post(requestBody);
+            builder.post(body);
         }
 
         if (headers != null) {
@@ -137,12 +390,42 @@ public final class Http {
         return request;
     }
 
+    /**
+     * @deprecated 请求被抢占重发后返回的Call不再对应实际请求，使用{@link #schedule(Object, String, Headers, byte[], Callback)}
+     */
+    @Deprecated
     public static Call enqueue(final Object tag, String url, Headers headers, byte[] body, Callback responseCallback) {
-        Call call = newCall(tag, url, headers, body);
-        call.enqueue(responseCallback);
+        return enqueue(Profile.API, tag, url, headers, body, responseCallback);
+    }
+
+    /**
+     * 返回最初的Call；PREFETCH请求被抢占后以clone重发，此时取消需使用{@link #cancelTag(OkHttpClient, Object)}
+     *
+     * @deprecated 使用{@link #schedule(Profile, Object, String, Headers, byte[], Callback)}
+     */
+    @Deprecated
+    public static Call enqueue(Profile profile, final Object tag, String url, Headers headers, byte[] body,
+                               Callback responseCallback) {
+        Call call = newCall(profile, tag, url, headers, body);
+        getScheduler(profile).enqueue(call, responseCallback);
         return call;
     }
 
+    public static RequestScheduler.Handle schedule(final Object tag, String url, Headers headers, byte[] body,
+                                                   Callback responseCallback) {
+        return schedule(Profile.API, tag, url, headers, body, responseCallback);
+    }
+
+    /**
+     * 经{@link RequestScheduler}按tag的优先级排队，见{@link #tag(Object, RequestScheduler.Priority)}。
+     * PREFETCH请求被抢占后以新的Call重发，返回的{@link RequestScheduler.Handle}跟随重发后的Call
+     */
+    public static RequestScheduler.Handle schedule(Profile profile, final Object tag, String url, Headers headers,
+                                                   byte[] body, Callback responseCallback) {
+        Call call = newCall(profile, tag, url, headers, body);
+        return getScheduler(profile).enqueue(call, responseCallback);
+    }
+
     public static Response execute(final Object tag, String url, Headers headers, byte[] body) throws IOException {
         Response response = newCall(tag, url, headers, body).execute();
         if (response == null) {
@@ -157,11 +440,29 @@ public final class Http {
     }
 
     public static Call newCall(final Object tag, String url, Headers headers, byte[] body) {
+        return newCall(Profile.API, tag, url, headers, body);
+    }
+
+    public static Call newCall(Profile profile, final Object tag, String url, Headers headers, byte[] body) {
         Request request = createRequest(tag, url, headers, body);
-        Call call = getClient().newCall(request);
+        Call call = getClient(profile).newCall(request);
         return call;
     }
 
+    public static Call newCall(Profile profile, final Object tag, String url, Headers headers, RequestBody body) {
+        Request request = createRequest(tag, url, headers, body);
+        Call call = getClient(profile).newCall(request);
+        return call;
+    }
+
+    /**
+     * 上传文件，内容边读边发，见{@link StreamBody}；大文件断点续传见{@link ChunkedUpload}
+     */
+    public static Call upload(Profile profile, final Object tag, String url, Headers headers, File file,
+                              MediaType contentType) {
+        return newCall(profile, tag, url, headers, StreamBody.create(contentType, file));
+    }
+
     public static boolean isGzipSupport(Headers headers) {
         String headEncoding = headers.get("Accept-Encoding");
         if (headEncoding == null || (!headEncoding.contains(CONTENT_ENCODING_GZIP))) { // 客户端 不支持 gzip
@@ -0,0 +1,592 @@
+package cm.android.common.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.os.Process;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import cm.android.thread.PriorityThreadFactory;
+import cm.java.codec.HashUtil;
+import cm.java.util.IoUtil;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 多连接分段下载，可断点续传：
+ * <p>
+ * - 先请求Range: bytes=0-0获取文件长度和校验信息（强ETag，没有时用Last-Modified），服务端不支持Range时单连接下载
+ * - 文件按Range分段并行下载，各段通过FileChannel按位置直接写入target.part；任一段失败时立即停止其他段
+ * - 进度定期保存在target.progress，进程重启后校验信息一致时从已下载的位置继续，请求带If-Range防止文件已变化；
+ * 文件已变化时删除进度，下次从头下载
+ * - 下载完成后可用{@link HashUtil#getMessageDigest(InputStream, String)}校验，通过后重命名为target
+ * - 默认使用{@link Http.Profile#DOWNLOAD}的client
+ */
+public class RangeDownloader {
+
+    private static final Logger logger = LoggerFactory.getLogger("http");
+
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final int MAX_SEGMENT_RETRY = 3;
+
+    private static final long PERSIST_INTERVAL = 1000;
+
+    private static final int BUF_SIZE = 64 * 1024;
+
+    public interface Listener {
+        /**
+         * 在下载线程回调，total未知时为-1
+         */
+        void onProgress(long downloaded, long total);
+    }
+
+    private final OkHttpClient client;
+
+    private final String url;
+
+    private final File target;
+
+    private final File partFile;
+
+    private final File stateFile;
+
+    private int segmentCount = 4;
+
+    private String digestAlgorithm;
+
+    private byte[] expectedDigest;
+
+    private Listener listener;
+
+    private volatile boolean canceled;
+
+    private final List<Call> calls = new ArrayList<>();
+
+    private State state;
+
+    private FileChannel channel;
+
+    private long lastPersist;
+
+    /**
+     * 远端文件已变化，进度作废，不再保存
+     */
+    private boolean discarded;
+
+    /**
+     * 第一个失败的段的异常，其他段随后因取消抛出的异常不覆盖它
+     */
+    private IOException failure;
+
+    public RangeDownloader(String url, File target) {
+        this(Http.getClient(Http.Profile.DOWNLOAD), url, target);
+    }
+
+    public RangeDownloader(OkHttpClient client, String url, File target) {
+        this.client = client;
+        this.url = url;
+        this.target = target;
+        this.partFile = new File(target.getPath() + ".part");
+        this.stateFile = new File(target.getPath() + ".progress");
+    }
+
+    /**
+     * 最多并行的段数，每段不小于1M
+     */
+    public RangeDownloader setSegmentCount(int segmentCount) {
+        this.segmentCount = Math.max(1, segmentCount);
+        return this;
+    }
+
+    /**
+     * @param algorithm 如{@link HashUtil#ALG_SHA}/{@link HashUtil#ALG_MD5}
+     */
+    public RangeDownloader setDigest(String algorithm, byte[] digest) {
+        this.digestAlgorithm = algorithm;
+        this.expectedDigest = digest;
+        return this;
+    }
+
+    public RangeDownloader setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * 停止下载，已下载的进度保留，{@link #download()}抛出IOException；
+     * 取消后不能再次下载，续传需创建新的RangeDownloader
+     */
+    public void cancel() {
+        canceled = true;
+        synchronized (calls) {
+            for (Call call : calls) {
+                call.cancel();
+            }
+        }
+    }
+
+    /**
+     * 同步下载，成功返回target
+     */
+    public File download() throws IOException {
+        long start = System.currentTimeMillis();
+
+        State resumed = State.load(stateFile);
+        if (resumed != null && (!url.equals(resumed.url) || !partFile.exists())) {
+            resumed = null;
+        }
+
+        Response probe = execute(new Request.Builder().url(url).header("Range", "bytes=0-0").build());
+        try {
+            if (probe.code() == 200) {
+                //不支持Range，直接使用这个响应
+                logger.info("RangeDownloader:range not supported:url = {}", url);
+                stateFile.delete();
+                state = null;
+                downloadSingle(probe);
+            } else if (probe.code() == 206) {
+                long total = parseTotal(probe.header("Content-Range"));
+                String validator = validator(probe);
+                probe.body().close();
+                if (total < 0) {
+                    throw new IOException("invalid Content-Range = " + probe.header("Content-Range"));
+                }
+
+                if (resumed != null && resumed.total == total && validator != null
+                        && validator.equals(resumed.validator)) {
+                    logger.info("RangeDownloader:resume:url = {},downloaded = {}", url, resumed.downloaded());
+                    state = resumed;
+                } else {
+                    state = State.create(url, total, validator, segmentCount);
+                }
+                downloadSegments();
+            } else {
+                throw new IOException("code = " + probe.code());
+            }
+        } finally {
+            IoUtil.closeQuietly(probe.body());
+        }
+
+        verify();
+        if (target.exists() && !target.delete()) {
+            throw new IOException("delete failed:" + target);
+        }
+        if (!partFile.renameTo(target)) {
+            throw new IOException("rename failed:" + partFile);
+        }
+        stateFile.delete();
+        logger.info("RangeDownloader:done:url = {},length = {},elapsed = {}ms",
+                url, target.length(), System.currentTimeMillis() - start);
+        return target;
+    }
+
+    private void downloadSingle(Response response) throws IOException {
+        long total = response.body().contentLength();
+        RandomAccessFile raf = new RandomAccessFile(partFile, "rw");
+        try {
+            raf.setLength(0);
+            channel = raf.getChannel();
+            Segment segment = new Segment(0, total < 0 ? Long.MAX_VALUE - 1 : total - 1, 0);
+            long written = write(response.body().byteStream(), segment, total);
+            if (total >= 0 && written != total) {
+                throw new IOException("unexpected end of stream:" + written + "/" + total);
+            }
+        } finally {
+            channel = null;
+            IoUtil.closeQuietly(raf);
+        }
+    }
+
+    private void downloadSegments() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(partFile, "rw");
+        ExecutorService executor = null;
+        try {
+            raf.setLength(state.total);
+            channel = raf.getChannel();
+            persist(true);
+
+            List<Segment> pending = new ArrayList<>();
+            for (Segment segment : state.segments) {
+                if (!segment.isDone()) {
+                    pending.add(segment);
+                }
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            executor = Executors.newFixedThreadPool(pending.size(),
+                    new PriorityThreadFactory("download", Process.THREAD_PRIORITY_BACKGROUND));
+            List<Future<Void>> futures = new ArrayList<>();
+            for (final Segment segment : pending) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        downloadSegment(segment);
+                        return null;
+                    }
+                }));
+            }
+
+            IOException error = null;
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (error == null) {
+                        error = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                                : new IOException(e.getCause());
+                        //一段失败时停止其他段，进度保留用于续传
+                        cancel();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancel();
+                    if (error == null) {
+                        error = new IOException("download interrupted");
+                    }
+                }
+            }
+            persist(true);
+            synchronized (this) {
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            channel = null;
+            IoUtil.closeQuietly(raf);
+        }
+    }
+
+    private void downloadSegment(Segment segment) throws IOException {
+        int attempt = 0;
+        while (!segment.isDone()) {
+            Request.Builder builder = new Request.Builder().url(url)
+                    .header("Range", "bytes=" + segment.position() + "-" + segment.end);
+            if (state.validator != null) {
+                builder.header("If-Range", state.validator);
+            }
+
+            long position = segment.position();
+            boolean changed = false;
+            Response response = null;
+            try {
+                response = execute(builder.build());
+                if (response.code() == 200) {
+                    //If-Range不匹配，文件已变化，不能续传
+                    changed = true;
+                    discardProgress();
+                    throw new IOException("remote file changed:url = " + url);
+                }
+                if (response.code() != 206) {
+                    throw new IOException("code = " + response.code());
+                }
+                write(response.body().byteStream(), segment, state.total);
+                if (!segment.isDone()) {
+                    throw new IOException("unexpected end of stream:position = " + segment.position());
+                }
+            } catch (IOException e) {
+                if (segment.position() > position) {
+                    attempt = 0;
+                }
+                if (canceled || changed || ++attempt > MAX_SEGMENT_RETRY) {
+                    fail(e);
+                    throw e;
+                }
+                logger.warn("RangeDownloader:retry segment:position = {},attempt = {},e = {}",
+                        segment.position(), attempt, e.toString());
+            } finally {
+                if (response != null) {
+                    IoUtil.closeQuietly(response.body());
+                }
+            }
+        }
+    }
+
+    /**
+     * 按位置写入channel，不超过segment.end，返回写入的字节数
+     */
+    private long write(InputStream in, Segment segment, long total) throws IOException {
+        byte[] buffer = new byte[BUF_SIZE];
+        ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+        long written = 0;
+        int read;
+        while (!segment.isDone() && (read = in.read(buffer)) != -1) {
+            if (canceled) {
+                throw new IOException("Canceled");
+            }
+            read = (int) Math.min(read, segment.end + 1 - segment.position());
+            wrapper.clear();
+            wrapper.limit(read);
+            long position = segment.position();
+            while (wrapper.hasRemaining()) {
+                position += channel.write(wrapper, position);
+            }
+            segment.downloaded += read;
+            written += read;
+            onProgress(segment, total);
+        }
+        return written;
+    }
+
+    private Response execute(Request request) throws IOException {
+        if (canceled) {
+            throw new IOException("Canceled");
+        }
+        Call call = client.newCall(request);
+        synchronized (calls) {
+            calls.add(call);
+        }
+        try {
+            return call.execute();
+        } finally {
+            synchronized (calls) {
+                calls.remove(call);
+            }
+        }
+    }
+
+    private void onProgress(Segment segment, long total) throws IOException {
+        long downloaded;
+        if (state == null) {
+            //单连接下载不保存进度
+            downloaded = segment.downloaded;
+        } else {
+            downloaded = state.downloaded();
+            persist(false);
+        }
+        Listener l = listener;
+        if (l != null) {
+            l.onProgress(downloaded, total);
+        }
+    }
+
+    private synchronized void persist(boolean force) throws IOException {
+        if (discarded) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!force && now - lastPersist < PERSIST_INTERVAL) {
+            return;
+        }
+        lastPersist = now;
+        //先取进度再落盘数据，保存的进度不会超前于已落盘的文件内容
+        long[] downloaded = state.snapshot();
+        channel.force(false);
+        state.save(stateFile, downloaded);
+    }
+
+    /**
+     * 记录第一个失败并停止其他段，不必等待按顺序排在前面的段下载完
+     */
+    private void fail(IOException e) {
+        synchronized (this) {
+            if (failure == null && !canceled) {
+                failure = e;
+            }
+        }
+        cancel();
+    }
+
+    private synchronized void discardProgress() {
+        discarded = true;
+        stateFile.delete();
+    }
+
+    private void verify() throws IOException {
+        if (expectedDigest == null) {
+            return;
+        }
+        FileInputStream in = new FileInputStream(partFile);
+        byte[] digest;
+        try {
+            digest = HashUtil.getMessageDigest(in, digestAlgorithm);
+        } finally {
+            IoUtil.closeQuietly(in);
+        }
+        if (!MessageDigest.isEqual(expectedDigest, digest)) {
+            partFile.delete();
+            stateFile.delete();
+            throw new IOException("digest mismatch:url = " + url);
+        }
+    }
+
+    /**
+     * If-Range只能使用强ETag，弱ETag（W/"..."）时使用Last-Modified；都没有时返回null，不续传
+     */
+    private static String validator(Response response) {
+        String etag = response.header("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return response.header("Last-Modified");
+    }
+
+    /**
+     * Content-Range: bytes 0-0/total
+     */
+    private static long parseTotal(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int index = contentRange.lastIndexOf('/');
+        if (index < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(index + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Segment {
+        final long start;
+        final long end;
+        volatile long downloaded;
+
+        Segment(long start, long end, long downloaded) {
+            this.start = start;
+            this.end = end;
+            this.downloaded = downloaded;
+        }
+
+        long position() {
+            return start + downloaded;
+        }
+
+        boolean isDone() {
+            return position() > end;
+        }
+    }
+
+    /**
+     * 进度文件格式：url、total、validator、段数，之后每行一段"start end downloaded"
+     */
+    private static final class State {
+        String url;
+        long total;
+        String validator;
+        final List<Segment> segments = new ArrayList<>();
+
+        static State create(String url, long total, String validator, int maxSegments) {
+            State state = new State();
+            state.url = url;
+            state.total = total;
+            state.validator = validator;
+            int count = (int) Math.max(1, Math.min(maxSegments, total / MIN_SEGMENT_SIZE));
+            long size = total / count;
+            for (int i = 0; i < count; i++) {
+                long start = i * size;
+                long end = i == count - 1 ? total - 1 : start + size - 1;
+                state.segments.add(new Segment(start, end, 0));
+            }
+            return state;
+        }
+
+        long downloaded() {
+            long downloaded = 0;
+            for (Segment segment : segments) {
+                downloaded += segment.downloaded;
+            }
+            return downloaded;
+        }
+
+        /**
+         * 各段当前的已下载长度
+         */
+        long[] snapshot() {
+            long[] downloaded = new long[segments.size()];
+            for (int i = 0; i < downloaded.length; i++) {
+                downloaded[i] = segments.get(i).downloaded;
+            }
+            return downloaded;
+        }
+
+        /**
+         * 先写临时文件并sync，再重命名，断电时不会留下不完整的进度文件
+         */
+        void save(File file, long[] downloaded) throws IOException {
+            File tmp = new File(file.getPath() + ".tmp");
+            FileOutputStream out = new FileOutputStream(tmp);
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            try {
+                writer.write(url + '\n');
+                writer.write(String.valueOf(total) + '\n');
+                writer.write((validator == null ? "" : validator) + '\n');
+                writer.write(String.valueOf(segments.size()) + '\n');
+                for (int i = 0; i < downloaded.length; i++) {
+                    Segment segment = segments.get(i);
+                    writer.write(segment.start + " " + segment.end + " " + downloaded[i] + '\n');
+                }
+                writer.flush();
+                out.getFD().sync();
+            } finally {
+                IoUtil.closeQuietly(writer);
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("rename failed:" + tmp);
+            }
+        }
+
+        /**
+         * 不存在或格式错误时返回null
+         */
+        static State load(File file) {
+            if (!file.exists()) {
+                return null;
+            }
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+                State state = new State();
+                state.url = reader.readLine();
+                state.total = Long.parseLong(reader.readLine());
+                String validator = reader.readLine();
+                state.validator = validator == null || validator.isEmpty() ? null : validator;
+                int count = Integer.parseInt(reader.readLine());
+                for (int i = 0; i < count; i++) {
+                    String[] parts = reader.readLine().split(" ");
+                    state.segments.add(new Segment(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                            Long.parseLong(parts[2])));
+                }
+                return state;
+            } catch (IOException | RuntimeException e) {
+                logger.warn("RangeDownloader:invalid progress file:" + file, e);
+                return null;
+            } finally {
+                IoUtil.closeQuietly(reader);
+            }
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package cm.android.common.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 按优先级把异步请求放入{@link okhttp3.Dispatcher}：
+ * <p>
+ * - 优先级通过请求的tag设置，见{@link PriorityTag}/{@link Prioritized}，默认{@link Priority#NORMAL}
+ * - 同时执行的请求不超过maxRequests，排队的请求按优先级、同优先级按先后放行
+ * - 有前台请求排队时不放行后台请求，后台请求最多占用1/4的并发数
+ * - {@link Priority#IMMEDIATE}请求因并发数已满排队时，取消一个还没有收到响应的{@link Priority#PREFETCH}请求让出位置，
+ * 被取消的请求以新的Call重新排队，不回调；已经收到响应的请求不会被抢占
+ * - {@link #enqueue(Call, Callback)}返回的{@link Handle}跟随重新排队后的Call，取消时不再重发
+ * - 统计各优先级的排队时间
+ */
+public class RequestScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger("http");
+
+    public enum Priority {
+        /**
+         * 用户正在等待的请求
+         */
+        IMMEDIATE,
+        NORMAL,
+        /**
+         * 上传、同步等后台请求
+         */
+        BACKGROUND,
+        /**
+         * 预加载，可被{@link #IMMEDIATE}抢占
+         */
+        PREFETCH
+    }
+
+    public interface Prioritized {
+        Priority getPriority();
+    }
+
+    /**
+     * 带优先级的tag，{@link Http#cancelTag(okhttp3.OkHttpClient, Object)}按原始tag匹配
+     */
+    public static final class PriorityTag implements Prioritized {
+        private final Object tag;
+        private final Priority priority;
+
+        public PriorityTag(Object tag, Priority priority) {
+            this.tag = tag;
+            this.priority = priority;
+        }
+
+        public Object getTag() {
+            return tag;
+        }
+
+        @Override
+        public Priority getPriority() {
+            return priority;
+        }
+
+        @Override
+        public String toString() {
+            return priority + ":" + tag;
+        }
+    }
+
+    /**
+     * 排队中的请求，被抢占重发后仍指向同一个请求
+     */
+    public interface Handle {
+        Request request();
+
+        /**
+         * 排队中的请求立即以"Canceled"回调onFailure，执行中的请求取消且不再重发
+         */
+        void cancel();
+
+        boolean isCanceled();
+    }
+
+    public static Priority priorityOf(Request request) {
+        Object tag = request.tag();
+        if (tag instanceof Prioritized) {
+            Priority priority = ((Prioritized) tag).getPriority();
+            if (priority != null) {
+                return priority;
+            }
+        }
+        return Priority.NORMAL;
+    }
+
+    /**
+     * 去掉{@link PriorityTag}的包装
+     */
+    public static Object unwrapTag(Object tag) {
+        return tag instanceof PriorityTag ? ((PriorityTag) tag).getTag() : tag;
+    }
+
+    private final int maxRequests;
+
+    private final int maxBackgroundRequests;
+
+    private final PriorityQueue<Entry> pending = new PriorityQueue<>();
+
+    private final List<Entry> running = new ArrayList<>();
+
+    private int runningBackground;
+
+    private int preempting;
+
+    private long sequence;
+
+    private final int length = Priority.values().length;
+    private final long[] waitCount = new long[length];
+    private final long[] waitTotal = new long[length];
+    private final long[] waitMax = new long[length];
+
+    public RequestScheduler(int maxRequests) {
+        this.maxRequests = Math.max(1, maxRequests);
+        this.maxBackgroundRequests = Math.max(1, this.maxRequests / 4);
+    }
+
+    public Handle enqueue(Call call, Callback callback) {
+        Entry entry = new Entry(call, callback, priorityOf(call.request()));
+        synchronized (this) {
+            entry.sequence = sequence++;
+            pending.add(entry);
+        }
+        promote();
+        return entry;
+    }
+
+    /**
+     * 取消排队中tag匹配的请求，回调onFailure
+     */
+    public void cancelTag(Object tag) {
+        List<Entry> canceled = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Entry> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (tag.equals(unwrapTag(entry.call.request().tag()))) {
+                    iterator.remove();
+                    canceled.add(entry);
+                }
+            }
+        }
+        cancel(canceled);
+    }
+
+    public void cancelAll() {
+        List<Entry> canceled;
+        synchronized (this) {
+            canceled = new ArrayList<>(pending);
+            pending.clear();
+        }
+        cancel(canceled);
+    }
+
+    private void cancel(Entry entry) {
+        boolean queued;
+        Call call;
+        synchronized (this) {
+            entry.canceled = true;
+            queued = pending.remove(entry);
+            call = entry.call;
+        }
+        if (queued) {
+            cancel(Collections.singletonList(entry));
+        } else {
+            call.cancel();
+        }
+    }
+
+    private static void cancel(List<Entry> entries) {
+        //已取消的call交给Dispatcher后立即以"Canceled"失败
+        for (Entry entry : entries) {
+            entry.call.cancel();
+            entry.call.enqueue(entry.callback);
+        }
+    }
+
+    private void promote() {
+        List<Entry> ready = new ArrayList<>();
+        List<Entry> victims = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            while (!pending.isEmpty() && running.size() < maxRequests) {
+                Entry next = pending.peek();
+                //队首是后台请求说明没有前台请求在排队
+                if (isBackground(next.priority) && runningBackground >= maxBackgroundRequests) {
+                    break;
+                }
+                pending.poll();
+                running.add(next);
+                if (isBackground(next.priority)) {
+                    runningBackground++;
+                }
+                recordWait(next.priority, now - next.enqueueTime);
+                ready.add(next);
+            }
+
+            int waitingImmediate = 0;
+            for (Entry entry : pending) {
+                if (entry.priority == Priority.IMMEDIATE) {
+                    waitingImmediate++;
+                }
+            }
+            for (Entry entry : running) {
+                if (waitingImmediate <= preempting) {
+                    break;
+                }
+                if (entry.priority == Priority.PREFETCH && !entry.preempted && !entry.responded) {
+                    entry.preempted = true;
+                    preempting++;
+                    victims.add(entry);
+                }
+            }
+        }
+
+        for (Entry entry : ready) {
+            entry.call.enqueue(entry);
+        }
+        for (Entry entry : victims) {
+            logger.info("RequestScheduler:preempt:url = {}", entry.call.request().url());
+            entry.call.cancel();
+        }
+    }
+
+    /**
+     * 收到响应，此后不再被抢占
+     *
+     * @return 已被抢占时返回false，此时Call已经或即将被取消，响应不可用
+     */
+    private synchronized boolean onResponded(Entry entry) {
+        if (entry.preempted) {
+            return false;
+        }
+        entry.responded = true;
+        return true;
+    }
+
+    /**
+     * @return 被抢占并重新排队时返回true
+     */
+    private boolean finish(Entry entry, boolean failed) {
+        boolean requeued = false;
+        synchronized (this) {
+            running.remove(entry);
+            if (isBackground(entry.priority)) {
+                runningBackground--;
+            }
+            if (entry.preempted) {
+                entry.preempted = false;
+                preempting--;
+                if (failed && !entry.canceled) {
+                    entry.call = entry.call.clone();
+                    entry.enqueueTime = System.nanoTime();
+                    pending.add(entry);
+                    requeued = true;
+                }
+            }
+        }
+        promote();
+        return requeued;
+    }
+
+    private static boolean isBackground(Priority priority) {
+        return priority == Priority.BACKGROUND || priority == Priority.PREFETCH;
+    }
+
+    private void recordWait(Priority priority, long nanos) {
+        int index = priority.ordinal();
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        waitCount[index]++;
+        waitTotal[index] += millis;
+        waitMax[index] = Math.max(waitMax[index], millis);
+    }
+
+    public synchronized long getWaitCount(Priority priority) {
+        return waitCount[priority.ordinal()];
+    }
+
+    /**
+     * 平均排队时间，毫秒
+     */
+    public synchronized long getAverageWait(Priority priority) {
+        int index = priority.ordinal();
+        return waitCount[index] == 0 ? 0 : waitTotal[index] / waitCount[index];
+    }
+
+    public synchronized long getMaxWait(Priority priority) {
+        return waitMax[priority.ordinal()];
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("RequestScheduler{running = ")
+                .append(running.size())
+                .append(", pending = ").append(pending.size());
+        for (Priority priority : Priority.values()) {
+            int index = priority.ordinal();
+            builder.append(", ").append(priority)
+                    .append(" = [count = ").append(waitCount[index])
+                    .append(", avg = ").append(waitCount[index] == 0 ? 0 : waitTotal[index] / waitCount[index])
+                    .append("ms, max = ").append(waitMax[index]).append("ms]");
+        }
+        return builder.append('}').toString();
+    }
+
+    private final class Entry implements Callback, Comparable<Entry>, Handle {
+        Call call;
+        final Callback callback;
+        final Priority priority;
+        long sequence;
+        long enqueueTime = System.nanoTime();
+        boolean preempted;
+        boolean responded;
+        volatile boolean canceled;
+
+        Entry(Call call, Callback callback, Priority priority) {
+            this.call = call;
+            this.callback = callback;
+            this.priority = priority;
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            if (finish(this, true)) {
+                return;
+            }
+            callback.onFailure(call, e);
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            if (!onResponded(this)) {
+                response.body().close();
+                if (!finish(this, true)) {
+                    callback.onFailure(call, new IOException("Canceled"));
+                }
+                return;
+            }
+            try {
+                callback.onResponse(call, response);
+            } finally {
+                finish(this, false);
+            }
+        }
+
+        @Override
+        public Request request() {
+            return call.request();
+        }
+
+        @Override
+        public void cancel() {
+            RequestScheduler.this.cancel(this);
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override
+        public int compareTo(Entry another) {
+            if (priority != another.priority) {
+                return priority.ordinal() < another.priority.ordinal() ? -1 : 1;
+            }
+            return sequence < another.sequence ? -1 : (sequence == another.sequence ? 0 : 1);
+        }
+    }
+}
@@ -4,14 +4,52 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
 
+import okhttp3.Headers;
 import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
 
+/**
+ * 失败重试：
+ * <p>
+ * - 只重试幂等方法，只针对IO异常和408/429/5xx中的可重试状态码；只能写一次的请求体（见{@link StreamBody}）不重试
+ * - 指数退避加随机抖动，优先使用响应的Retry-After
+ * - 按host限制重试预算，服务端故障时避免重试放大流量；最多保留{@link #MAX_HOSTS}个host
+ * - 请求被取消时不重试
+ * - 丢弃的响应会关闭，避免连接泄漏
+ */
 public class RetryInterceptor implements Interceptor {
     private int count;
 
+    private static final long BASE_DELAY = 500;
+
+    private static final long MAX_DELAY = 10 * 1000;
+
+    /**
+     * Retry-After超过该值时不再重试
+     */
+    private static final long MAX_RETRY_AFTER = 30 * 1000;
+
+    private static final Random sRandom = new Random();
+
+    static final int MAX_HOSTS = 64;
+
+    private static final Map<String, Budget> sBudgets = new LinkedHashMap<String, Budget>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Budget> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+
     public RetryInterceptor(int count) {
         this.count = count;
     }
@@ -21,17 +59,159 @@ public class RetryInterceptor implements Interceptor {
     @Override
     public Response intercept(Interceptor.Chain chain) throws IOException {
         Request request = chain.request();
-
-        // try the request
-        Response response = chain.proceed(request);
+        boolean idempotent = isIdempotent(request.method()) && !StreamBody.isOneShot(request.body());
+        Budget budget = budget(request.url().host());
 
         int tryCount = 0;
-        while (!response.isSuccessful() && tryCount < count) {
-            logger.info("okhttp:proceed:tryCount= {}", tryCount);
+        while (true) {
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                if (!idempotent || tryCount >= count || !isRetryable(e) || !budget.tryAcquire()) {
+                    throw e;
+                }
+                tryCount++;
+                long delay = backoff(tryCount);
+                logger.info("okhttp:retry:tryCount = {},delay = {}ms,e = {}", tryCount, delay, e.toString());
+                sleep(delay);
+                continue;
+            }
+
+            if (!idempotent || tryCount >= count || !isRetryable(response.code())) {
+                if (response.isSuccessful()) {
+                    budget.onSuccess();
+                }
+                return response;
+            }
+
+            long delay = retryAfter(response.headers());
+            if (delay > MAX_RETRY_AFTER || !budget.tryAcquire()) {
+                return response;
+            }
+            if (delay < 0) {
+                delay = backoff(tryCount + 1);
+            }
+
+            response.body().close();
             tryCount++;
-            response = chain.proceed(request);
+            logger.info("okhttp:retry:tryCount = {},delay = {}ms,code = {}", tryCount, delay, response.code());
+            sleep(delay);
         }
+    }
 
-        return response;
+    private static boolean isIdempotent(String method) {
+        return "GET".equals(method)
+                || "HEAD".equals(method)
+                || "OPTIONS".equals(method)
+                || "PUT".equals(method)
+                || "DELETE".equals(method)
+                || "TRACE".equals(method);
+    }
+
+    private static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    private static boolean isRetryable(IOException e) {
+        if (isCanceled(e)) {
+            return false;
+        }
+        //取消请求也表现为InterruptedIOException，只有超时才重试
+        return !(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException;
+    }
+
+    /**
+     * Call.cancel()：未开始读写时抛出"Canceled"，读写中关闭socket，抛出"Socket closed"
+     */
+    static boolean isCanceled(IOException e) {
+        String message = e.getMessage();
+        if ("Canceled".equals(message)) {
+            return true;
+        }
+        return e instanceof SocketException && message != null
+                && message.toLowerCase(Locale.US).contains("closed");
+    }
+
+    /**
+     * full jitter: [0, min(MAX_DELAY, BASE_DELAY * 2^(tryCount-1)))
+     */
+    private static long backoff(int tryCount) {
+        long cap = Math.min(MAX_DELAY, BASE_DELAY << Math.min(tryCount - 1, 16));
+        synchronized (sRandom) {
+            return (long) (sRandom.nextDouble() * cap);
+        }
+    }
+
+    /**
+     * 解析Retry-After（秒数或HTTP日期），没有时返回-1
+     */
+    private static long retryAfter(Headers headers) {
+        String value = headers.get("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException ignore) {
+        }
+        Date date = headers.getDate("Retry-After");
+        if (date == null) {
+            return -1;
+        }
+        return Math.max(0, date.getTime() - System.currentTimeMillis());
+    }
+
+    private static void sleep(long delay) throws InterruptedIOException {
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("retry interrupted");
+        }
+    }
+
+    static Budget budget(String host) {
+        synchronized (sBudgets) {
+            Budget budget = sBudgets.get(host);
+            if (budget == null) {
+                budget = new Budget();
+                sBudgets.put(host, budget);
+            }
+            return budget;
+        }
+    }
+
+    /**
+     * 当前记录的host数，仅供测试
+     */
+    static int budgetCount() {
+        synchronized (sBudgets) {
+            return sBudgets.size();
+        }
+    }
+
+    /**
+     * 令牌桶：每次重试消耗1个，每次成功返还0.1个，余量不足一半时停止重试
+     */
+    static final class Budget {
+        private static final float MAX_TOKENS = 10;
+
+        private float tokens = MAX_TOKENS;
+
+        synchronized boolean tryAcquire() {
+            if (tokens <= MAX_TOKENS / 2) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized void onSuccess() {
+            tokens = Math.min(MAX_TOKENS, tokens + 0.1f);
+        }
     }
 }
@@ -0,0 +1,128 @@
+package cm.android.common.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+
+import cm.java.util.IoUtil;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * 流式请求体，写入时边读边发，不把内容整体读入内存
+ * <p>
+ * - length为-1时长度未知，使用chunked传输
+ * - 基于{@link InputStream}/{@link Source}的请求体只能写一次，{@link RetryInterceptor}不重试，
+ * 再次写入时抛出IOException；需要重试的请求（如PUT）使用基于{@link File}的请求体
+ */
+public final class StreamBody {
+
+    private StreamBody() {
+    }
+
+    public static RequestBody create(MediaType contentType, File file) {
+        return create(contentType, file, 0, file.length());
+    }
+
+    /**
+     * 文件的一段，可重复写入
+     */
+    public static RequestBody create(final MediaType contentType, final File file, final long offset,
+                                     final long length) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                Source source = null;
+                try {
+                    raf.seek(offset);
+                    source = Okio.source(Channels.newInputStream(raf.getChannel()));
+                    long remaining = length;
+                    while (remaining > 0) {
+                        long read = source.read(sink.buffer(), remaining);
+                        if (read == -1) {
+                            throw new IOException("unexpected end of file:offset = " + (offset + length - remaining));
+                        }
+                        remaining -= read;
+                        sink.emitCompleteSegments();
+                    }
+                } finally {
+                    IoUtil.closeQuietly(source);
+                    IoUtil.closeQuietly(raf);
+                }
+            }
+        };
+    }
+
+    public static RequestBody create(MediaType contentType, InputStream in, long length) {
+        return create(contentType, Okio.source(in), length);
+    }
+
+    public static RequestBody create(MediaType contentType, Source source, long length) {
+        return new OneShotBody(contentType, source, length);
+    }
+
+    /**
+     * 是否只能写一次，这样的请求不能重试
+     */
+    public static boolean isOneShot(RequestBody body) {
+        return body instanceof OneShotBody;
+    }
+
+    private static final class OneShotBody extends RequestBody {
+        private final MediaType contentType;
+        private final Source source;
+        private final long length;
+        private boolean consumed;
+
+        OneShotBody(MediaType contentType, Source source, long length) {
+            this.contentType = contentType;
+            this.source = source;
+            this.length = length;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            synchronized (this) {
+                if (consumed) {
+                    throw new IOException("one-shot body already written");
+                }
+                consumed = true;
+            }
+            try {
+                if (length < 0) {
+                    sink.writeAll(source);
+                } else {
+                    sink.write(source, length);
+                }
+            } finally {
+                IoUtil.closeQuietly(source);
+            }
+        }
+    }
+}
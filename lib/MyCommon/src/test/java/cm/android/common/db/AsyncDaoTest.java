@@ -0,0 +1,113 @@
+package cm.android.common.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import cm.android.common.BuildConfig;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 22)
+public class AsyncDaoTest {
+
+    private SQLiteDatabase db;
+    private SQLiteDao dao;
+    private AsyncDao asyncDao;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE item (_id INTEGER PRIMARY KEY AUTOINCREMENT,name TEXT UNIQUE)");
+        dao = new SQLiteDao(db, "item", new String[]{"_id", "name"});
+        asyncDao = new AsyncDao(dao, 1);
+    }
+
+    @After
+    public void tearDown() {
+        asyncDao.shutdown();
+        db.close();
+    }
+
+    private Callable<Integer> bulkInsert(final String... names) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                List<ContentValues> list = new ArrayList<>();
+                for (String name : names) {
+                    ContentValues values = new ContentValues();
+                    values.put("name", name);
+                    list.add(values);
+                }
+                //嵌套在批事务中的事务
+                return dao.bulkInsert(list);
+            }
+        };
+    }
+
+    private long count() {
+        return DatabaseUtils.queryNumEntries(db, "item");
+    }
+
+    @Test
+    public void testFailedWriteDoesNotRollBackBatch() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        //占住写线程，让后面的写合并为一批
+        Future<Integer> first = asyncDao.write(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                blocked.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return 0;
+            }
+        });
+        blocked.await(5, TimeUnit.SECONDS);
+
+        Future<Integer> a = asyncDao.write(bulkInsert("a", "b"));
+        Future<Integer> duplicate = asyncDao.write(bulkInsert("c", "a"));
+        Future<Integer> d = asyncDao.write(bulkInsert("d"));
+        release.countDown();
+
+        assertEquals(0, first.get(5, TimeUnit.SECONDS).intValue());
+        assertEquals(2, a.get(5, TimeUnit.SECONDS).intValue());
+        assertEquals(1, d.get(5, TimeUnit.SECONDS).intValue());
+        try {
+            duplicate.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            //ok
+        }
+        //c随失败的写一起回滚
+        assertEquals(3, count());
+    }
+
+    @Test
+    public void testBatchCommitted() throws Exception {
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(asyncDao.write(bulkInsert("name" + i)));
+        }
+        for (Future<Integer> future : futures) {
+            assertEquals(1, future.get(5, TimeUnit.SECONDS).intValue());
+        }
+        assertEquals(10, count());
+    }
+}
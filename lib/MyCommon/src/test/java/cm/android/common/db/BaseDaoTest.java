@@ -0,0 +1,162 @@
+package cm.android.common.db;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentValues;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cm.android.common.BuildConfig;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 22)
+public class BaseDaoTest {
+
+    static class Item {
+        long _id;
+        String name;
+        int count = -1;
+    }
+
+    static class ItemDao extends BaseDao {
+        ItemDao() {
+            super(TestProvider.CONTENT_URI, TestProvider.PROJECTION, RuntimeEnvironment.application);
+        }
+    }
+
+    private ItemDao dao;
+
+    private TestProvider provider;
+
+    @Before
+    public void setUp() {
+        provider = TestProvider.register();
+        dao = new ItemDao();
+    }
+
+    private void insert(int rows) {
+        List<ContentValues> list = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            ContentValues values = new ContentValues();
+            values.put("name", "name" + i);
+            if (i % 2 == 0) {
+                values.put("count", i);
+            }
+            list.add(values);
+        }
+        assertEquals(rows, dao.bulkInsert(list));
+    }
+
+    @Test
+    public void testIterateReuseResetsNull() throws Exception {
+        insert(4);
+
+        Item previous = null;
+        int index = 0;
+        for (Item item : dao.iterate(null, null, "_id ASC", Item.class, true)) {
+            if (previous != null) {
+                assertSame(previous, item);
+            }
+            previous = item;
+            assertEquals("name" + index, item.name);
+            //NULL时为新建对象的默认值，不是上一行的值
+            assertEquals(index % 2 == 0 ? index : -1, item.count);
+            index++;
+        }
+        assertEquals(4, index);
+    }
+
+    @Test
+    public void testQueryWindow() throws Exception {
+        insert(5);
+
+        BaseDao.Window<Item> window = dao.queryWindow(null, null, 0, 2, Item.class);
+        assertEquals(2, window.rows.size());
+        assertEquals("name0", window.rows.get(0).name);
+        assertTrue(window.hasMore);
+
+        window = dao.queryWindow(null, null, window.lastId, 2, Item.class);
+        assertEquals("name2", window.rows.get(0).name);
+        assertTrue(window.hasMore);
+
+        window = dao.queryWindow(null, null, window.lastId, 2, Item.class);
+        assertEquals(1, window.rows.size());
+        assertEquals("name4", window.rows.get(0).name);
+        assertFalse(window.hasMore);
+
+        window = dao.queryWindow("count IS NULL", null, 0, 10, Item.class);
+        assertEquals(2, window.rows.size());
+        assertFalse(window.hasMore);
+        assertEquals("11", provider.lastQueryLimit);
+
+        //正好一页时没有下一页
+        window = dao.queryWindow(null, null, 0, 5, Item.class);
+        assertEquals(5, window.rows.size());
+        assertFalse(window.hasMore);
+    }
+
+    private static ContentValues values(String name, int count) {
+        ContentValues values = new ContentValues();
+        values.put("name", name);
+        values.put("count", count);
+        return values;
+    }
+
+    @Test
+    public void testUpsertAll() throws Exception {
+        insert(2);
+
+        List<ContentValues> list = new ArrayList<>();
+        list.add(values("name1", 10));
+        list.add(values("new", 1));
+        list.add(values("name1", 11));
+        assertEquals(2, dao.upsertAll(list, "name").length);
+
+        List<Item> items = dao.queryList(null, null, "_id ASC", Item.class);
+        assertEquals(3, items.size());
+        assertEquals(11, items.get(1).count);
+        assertEquals("new", items.get(2).name);
+        assertEquals(1, items.get(2).count);
+    }
+
+    @Test
+    public void testUpsertAllMissingKey() throws Exception {
+        List<ContentValues> list = new ArrayList<>();
+        list.add(values("a", 1));
+        ContentValues noKey = new ContentValues();
+        noKey.put("count", 2);
+        list.add(noKey);
+        try {
+            dao.upsertAll(list, "name");
+            fail();
+        } catch (IllegalArgumentException e) {
+            //ok
+        }
+        assertEquals(0, dao.queryList(null, null, null, Item.class).size());
+    }
+
+    @Test
+    public void testDeleteByIds() throws Exception {
+        insert(1200);
+
+        List<Integer> ids = new ArrayList<>();
+        for (Item item : dao.queryList("count IS NULL", null, null, Item.class)) {
+            ids.add((int) item._id);
+        }
+        assertEquals(600, ids.size());
+        assertEquals(600, dao.deleteByIds(ids));
+        assertEquals(600, dao.queryList(null, null, null, Item.class).size());
+    }
+}
@@ -0,0 +1,132 @@
+package cm.android.common.db;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class QueryCacheTest {
+
+    private static final class CountingLoader implements QueryCache.Loader<String> {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public List<String> load() {
+            count.incrementAndGet();
+            List<String> list = new ArrayList<>();
+            list.add("row");
+            return list;
+        }
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        QueryCache.Key key = new QueryCache.Key(String.class, "a = ?", new String[]{"1"}, null);
+        assertEquals(key, new QueryCache.Key(String.class, "a = ?", new String[]{"1"}, null));
+        assertEquals(key.hashCode(), new QueryCache.Key(String.class, "a = ?", new String[]{"1"}, null).hashCode());
+
+        //拼接成字符串时相同，结构化后不同
+        assertFalse(new QueryCache.Key(String.class, "a|b", null, "c")
+                .equals(new QueryCache.Key(String.class, "a", null, "b|c")));
+        assertFalse(new QueryCache.Key(String.class, null, new String[]{"1, 2"}, null)
+                .equals(new QueryCache.Key(String.class, null, new String[]{"1", "2"}, null)));
+        assertFalse(key.equals(new QueryCache.Key(Integer.class, "a = ?", new String[]{"1"}, null)));
+    }
+
+    @Test
+    public void testKeyCopiesArgs() throws Exception {
+        String[] args = {"1"};
+        QueryCache.Key key = new QueryCache.Key(String.class, "a = ?", args, null);
+        args[0] = "2";
+        assertEquals(new QueryCache.Key(String.class, "a = ?", new String[]{"1"}, null), key);
+    }
+
+    @Test
+    public void testHitAndInvalidate() throws Exception {
+        QueryCache cache = new QueryCache(4);
+        CountingLoader loader = new CountingLoader();
+        QueryCache.Key key = new QueryCache.Key(String.class, null, null, null);
+
+        List<String> first = cache.get(key, loader);
+        assertSame(first, cache.get(key, loader));
+        assertEquals(1, loader.count.get());
+        assertEquals(1, cache.getHitCount());
+        try {
+            first.add("x");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            //ok
+        }
+
+        cache.invalidate();
+        assertNotSame(first, cache.get(key, loader));
+        assertEquals(2, loader.count.get());
+    }
+
+    @Test
+    public void testInvalidateDuringLoad() throws Exception {
+        final QueryCache cache = new QueryCache(4);
+        final QueryCache.Key key = new QueryCache.Key(String.class, null, null, null);
+        CountingLoader loader = new CountingLoader();
+
+        cache.get(key, new QueryCache.Loader<String>() {
+            @Override
+            public List<String> load() {
+                cache.invalidate();
+                return Collections.singletonList("stale");
+            }
+        });
+        assertEquals("row", cache.get(key, loader).get(0));
+        assertEquals(1, loader.count.get());
+    }
+
+    @Test
+    public void testConcurrentMissLoadsOnce() throws Exception {
+        final QueryCache cache = new QueryCache(4);
+        final QueryCache.Key key = new QueryCache.Key(String.class, null, null, null);
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        final QueryCache.Loader<String> loader = new QueryCache.Loader<String>() {
+            @Override
+            public List<String> load() {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Collections.singletonList("row");
+            }
+        };
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    cache.get(key, loader);
+                }
+            };
+            threads[i].start();
+        }
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertEquals(1, loads.get());
+    }
+}
@@ -0,0 +1,174 @@
+package cm.android.common.db;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import java.lang.reflect.Field;
+
+import cm.android.common.BuildConfig;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 22)
+public class RowMapperTest {
+
+    private static final String[] COLUMNS = {"id", "count", "name", "data", "flag", "time"};
+
+    static class Bean {
+        int id;
+        Integer count;
+        String name;
+        byte[] data;
+        boolean flag;
+        long time;
+        transient String ignored;
+    }
+
+    private static MatrixCursor cursor(int rows) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int i = 0; i < rows; i++) {
+            cursor.addRow(new Object[]{i, i * 2, "name" + i, new byte[]{(byte) i}, i % 2, i * 1000L});
+        }
+        return cursor;
+    }
+
+    @Test
+    public void testMap() throws Exception {
+        MatrixCursor cursor = cursor(2);
+        RowMapper.Bound<Bean> bound = RowMapper.of(Bean.class).bind(cursor);
+
+        assertTrue(cursor.moveToPosition(1));
+        Bean bean = bound.map();
+        assertEquals(1, bean.id);
+        assertEquals(Integer.valueOf(2), bean.count);
+        assertEquals("name1", bean.name);
+        assertEquals(1, bean.data[0]);
+        assertTrue(bean.flag);
+        assertEquals(1000L, bean.time);
+    }
+
+    @Test
+    public void testNull() throws Exception {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        cursor.addRow(new Object[]{null, null, null, null, null, null});
+        cursor.moveToFirst();
+
+        Bean bean = RowMapper.of(Bean.class).bind(cursor).map();
+        assertEquals(0, bean.id);
+        assertNull(bean.count);
+        assertEquals("", bean.name);
+        assertNull(bean.data);
+        assertFalse(bean.flag);
+    }
+
+    @Test
+    public void testMissingColumn() throws Exception {
+        MatrixCursor cursor = new MatrixCursor(new String[]{"id"});
+        cursor.addRow(new Object[]{7});
+        cursor.moveToFirst();
+
+        Bean bean = RowMapper.of(Bean.class).bind(cursor).map();
+        assertEquals(7, bean.id);
+        assertNull(bean.name);
+    }
+
+    @Test
+    public void testToContentValues() throws Exception {
+        Bean bean = new Bean();
+        bean.id = 3;
+        bean.name = "a";
+        bean.ignored = "x";
+
+        ContentValues values = RowMapper.of(Bean.class).toContentValues(bean);
+        assertEquals(Integer.valueOf(3), values.getAsInteger("id"));
+        assertEquals("a", values.getAsString("name"));
+        assertFalse(values.containsKey("count"));
+        assertFalse(values.containsKey("ignored"));
+    }
+
+    /**
+     * 与每行重新反射字段、查找列下标的方式对比，需要时手动运行
+     */
+    @Ignore("benchmark")
+    @Test
+    public void testMapCost() throws Exception {
+        int rows = 10000;
+        MatrixCursor cursor = cursor(rows);
+
+        //预热
+        mapAll(cursor);
+        mapAllReflect(cursor);
+
+        long start = System.nanoTime();
+        long mapped = mapAll(cursor);
+        long mapperCost = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long reflected = mapAllReflect(cursor);
+        long reflectCost = System.nanoTime() - start;
+
+        assertEquals(reflected, mapped);
+        System.out.println("RowMapper: mapper = " + mapperCost / rows
+                + "ns/row,reflect = " + reflectCost / rows + "ns/row");
+        assertTrue(mapperCost < reflectCost);
+    }
+
+    private static long mapAll(Cursor cursor) {
+        long sum = 0;
+        RowMapper.Bound<Bean> bound = RowMapper.of(Bean.class).bind(cursor);
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            sum += bound.map().time;
+        }
+        return sum;
+    }
+
+    /**
+     * 原SqlUtil的方式：每行反射字段，按String读取后通过包装类型的构造函数转换
+     */
+    private static long mapAllReflect(Cursor cursor) throws Exception {
+        long sum = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            Bean bean = Bean.class.getDeclaredConstructor().newInstance();
+            for (Field field : Bean.class.getDeclaredFields()) {
+                int index = cursor.getColumnIndex(field.getName());
+                if (index < 0) {
+                    continue;
+                }
+                field.setAccessible(true);
+                Class<?> type = boxed(field.getType());
+                if (type == byte[].class) {
+                    field.set(bean, cursor.getBlob(index));
+                } else {
+                    String value = cursor.getString(index);
+                    field.set(bean, type.getConstructor(String.class).newInstance(value == null ? "" : value));
+                }
+            }
+            sum += bean.time;
+        }
+        return sum;
+    }
+
+    private static Class<?> boxed(Class<?> type) {
+        if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        }
+        return type;
+    }
+}
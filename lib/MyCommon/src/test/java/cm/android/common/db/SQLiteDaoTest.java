@@ -0,0 +1,110 @@
+package cm.android.common.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import cm.android.common.BuildConfig;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 22)
+public class SQLiteDaoTest {
+
+    private SQLiteDatabase db;
+    private SQLiteDao itemDao;
+    private SQLiteDao tagDao;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE item (_id INTEGER PRIMARY KEY AUTOINCREMENT,name TEXT)");
+        db.execSQL("CREATE TABLE tag (_id INTEGER PRIMARY KEY AUTOINCREMENT,name TEXT)");
+        itemDao = new SQLiteDao(db, "item", new String[]{"_id", "name"});
+        tagDao = new SQLiteDao(db, "tag", new String[]{"_id", "name"});
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private static ContentValues values(String name) {
+        ContentValues values = new ContentValues();
+        values.put("name", name);
+        return values;
+    }
+
+    /**
+     * 两个线程各自在一个DAO的事务中写另一个DAO
+     */
+    @Test(timeout = 10 * 1000)
+    public void testCrossDaoTransactions() throws Exception {
+        final int rounds = 50;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                await(start);
+                for (int i = 0; i < rounds; i++) {
+                    tagDao.runInTransaction(new Runnable() {
+                        @Override
+                        public void run() {
+                            tagDao.insert(values("tag"));
+                            itemDao.insert(values("item"));
+                        }
+                    });
+                }
+            }
+        };
+        other.start();
+
+        start.countDown();
+        for (int i = 0; i < rounds; i++) {
+            itemDao.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    itemDao.insert(values("item"));
+                    tagDao.insert(values("tag"));
+                }
+            });
+        }
+        other.join();
+
+        assertEquals(rounds * 2, DatabaseUtils.queryNumEntries(db, "item"));
+        assertEquals(rounds * 2, DatabaseUtils.queryNumEntries(db, "tag"));
+    }
+
+    @Test
+    public void testUpdateEmptyValues() throws Exception {
+        long id = itemDao.insert(values("a"));
+        try {
+            itemDao.update((int) id, new ContentValues());
+            fail();
+        } catch (IllegalArgumentException e) {
+            //ok
+        }
+        assertTrue(itemDao.update((int) id, values("b")) == 1);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package cm.android.common.db;
+
+import org.robolectric.shadows.ShadowContentResolver;
+
+import android.content.ContentProvider;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * 测试用的provider，数据保存在内存数据库的item表中
+ */
+public class TestProvider extends ContentProvider {
+
+    public static final String AUTHORITY = "cm.android.common.db.test";
+
+    public static final String TABLE = "item";
+
+    public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/" + TABLE);
+
+    public static final String[] PROJECTION = {BaseColumns._ID, "name", "count"};
+
+    private SQLiteDatabase db;
+
+    /**
+     * 最近一次查询的{@link BaseDao#QUERY_PARAMETER_LIMIT}
+     */
+    public volatile String lastQueryLimit;
+
+    public static TestProvider register() {
+        TestProvider provider = new TestProvider();
+        provider.onCreate();
+        ShadowContentResolver.registerProviderInternal(AUTHORITY, provider);
+        return provider;
+    }
+
+    public SQLiteDatabase getDatabase() {
+        return db;
+    }
+
+    @Override
+    public boolean onCreate() {
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE " + TABLE + " (" + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + "name TEXT UNIQUE,count INTEGER)");
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        lastQueryLimit = uri.getQueryParameter(BaseDao.QUERY_PARAMETER_LIMIT);
+        return db.query(TABLE, projection, where(uri, selection), selectionArgs, null, null, sortOrder,
+                lastQueryLimit);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        long id = db.insert(TABLE, null, values);
+        return id == -1 ? null : ContentUris.withAppendedId(CONTENT_URI, id);
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return db.delete(TABLE, where(uri, selection), selectionArgs);
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return db.update(TABLE, values, where(uri, selection), selectionArgs);
+    }
+
+    private static String where(Uri uri, String selection) {
+        if (uri.getPathSegments().size() < 2) {
+            return selection;
+        }
+        String byId = BaseColumns._ID + " = " + ContentUris.parseId(uri);
+        return selection == null ? byId : "(" + selection + ") AND " + byId;
+    }
+}
@@ -0,0 +1,127 @@
+package cm.android.common.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import cm.android.common.cache.disk.cache.HttpStreamCache;
+import okhttp3.CacheControl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.fail;
+
+public class CacheInterceptorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+
+    private HttpStreamCache cache;
+
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        cache = new HttpStreamCache(folder.newFolder("cache"), 1024 * 1024);
+        client = new OkHttpClient.Builder()
+                .addInterceptor(new CacheInterceptor(cache))
+                .retryOnConnectionFailure(false)
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        cache.release();
+    }
+
+    private String get(Request request) throws IOException {
+        Response response = client.newCall(request).execute();
+        return response.body().string();
+    }
+
+    @Test
+    public void testFreshHit() throws Exception {
+        server.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=60").setBody("a"));
+        Request request = new Request.Builder().url(server.url("/fresh")).build();
+
+        assertEquals("a", get(request));
+        assertEquals("a", get(request));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testConditionalNotModified() throws Exception {
+        server.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=0").setHeader("ETag", "\"v1\"")
+                .setBody("a"));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        Request request = new Request.Builder().url(server.url("/etag")).build();
+
+        assertEquals("a", get(request));
+        assertEquals("a", get(request));
+
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        RecordedRequest conditional = server.takeRequest();
+        assertEquals("\"v1\"", conditional.getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void testOnlyIfCachedMiss() throws Exception {
+        Request request = new Request.Builder().url(server.url("/miss"))
+                .cacheControl(CacheControl.FORCE_CACHE).build();
+        Response response = client.newCall(request).execute();
+        assertEquals(504, response.code());
+        response.body().close();
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void testInvalidateWhenUnsafeRequestFails() throws Exception {
+        server.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=60").setBody("a"));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        server.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=60").setBody("b"));
+        Request request = new Request.Builder().url(server.url("/item")).build();
+        assertEquals("a", get(request));
+
+        Request post = new Request.Builder().url(server.url("/item"))
+                .post(RequestBody.create(MediaType.parse("text/plain"), "x")).build();
+        try {
+            client.newCall(post).execute();
+            fail();
+        } catch (IOException e) {
+            //ok
+        }
+
+        assertEquals("b", get(request));
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void testUnreadBodyNotCached() throws Exception {
+        server.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=60").setBody("a"));
+        server.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=60").setBody("b"));
+        Request request = new Request.Builder().url(server.url("/partial")).build();
+
+        //没有读完就关闭，不提交缓存
+        client.newCall(request).execute().body().close();
+        assertEquals("b", get(request));
+        assertEquals(2, server.getRequestCount());
+    }
+}
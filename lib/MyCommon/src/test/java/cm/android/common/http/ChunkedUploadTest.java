@@ -0,0 +1,128 @@
+package cm.android.common.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+public class ChunkedUploadTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[250]);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private ChunkedUpload newUpload() {
+        return new ChunkedUpload(new OkHttpClient(), server.url("/upload").toString(), file,
+                MediaType.parse("application/octet-stream"), 100);
+    }
+
+    @Test
+    public void testUpload() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(308).setHeader("Range", "bytes=0-99"));
+        server.enqueue(new MockResponse().setResponseCode(308));
+        server.enqueue(new MockResponse().setBody("done"));
+
+        ChunkedUpload upload = newUpload();
+        Response response = upload.upload(null);
+        assertEquals("done", response.body().string());
+        assertEquals(250, upload.getOffset());
+
+        String[] ranges = {"bytes 0-99/250", "bytes 100-199/250", "bytes 200-249/250"};
+        for (String range : ranges) {
+            RecordedRequest request = server.takeRequest();
+            assertEquals(range, request.getHeader("Content-Range"));
+        }
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        server.enqueue(new MockResponse().setBody("done"));
+
+        ChunkedUpload upload = newUpload();
+        upload.setOffset(200);
+        upload.upload(null).body().close();
+        RecordedRequest request = server.takeRequest();
+        assertEquals("bytes 200-249/250", request.getHeader("Content-Range"));
+        assertEquals(50, request.getBodySize());
+    }
+
+    @Test
+    public void testAckBeyondSent() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(308).setHeader("Range", "bytes=0-999"));
+
+        ChunkedUpload upload = newUpload();
+        try {
+            upload.upload(null);
+            fail();
+        } catch (IOException e) {
+            //ok
+        }
+        assertEquals(0, upload.getOffset());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testCanceledBeforeUpload() throws Exception {
+        ChunkedUpload upload = newUpload();
+        upload.cancel();
+        try {
+            upload.upload(null);
+            fail();
+        } catch (IOException e) {
+            //ok
+        }
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void testInvalidOffset() throws Exception {
+        ChunkedUpload upload = newUpload();
+        upload.setOffset(0);
+        upload.setOffset(250);
+        for (long offset : new long[]{-1, 251}) {
+            try {
+                upload.setOffset(offset);
+                fail();
+            } catch (IllegalArgumentException e) {
+                //ok
+            }
+        }
+        assertEquals(250, upload.getOffset());
+    }
+}
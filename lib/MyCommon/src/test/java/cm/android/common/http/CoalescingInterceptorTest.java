@@ -0,0 +1,190 @@
+package cm.android.common.http;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class CoalescingInterceptorTest {
+
+    private static final Request REQUEST = new Request.Builder().url("http://example.com/a").build();
+
+    /**
+     * 第一次proceed阻塞到release，之后按顺序返回结果
+     */
+    private static final class FakeChain implements Interceptor.Chain {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger proceeds = new AtomicInteger();
+        volatile IOException error;
+
+        @Override
+        public Request request() {
+            return REQUEST;
+        }
+
+        @Override
+        public Response proceed(Request request) throws IOException {
+            int count = proceeds.incrementAndGet();
+            if (count == 1) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                if (error != null) {
+                    throw error;
+                }
+            }
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .message("OK")
+                    .body(ResponseBody.create(null, "body" + count))
+                    .build();
+        }
+
+        @Override
+        public Connection connection() {
+            return null;
+        }
+    }
+
+    private static Future<String> submit(ExecutorService executor, final Interceptor interceptor,
+                                         final Interceptor.Chain chain) {
+        return executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return interceptor.intercept(chain).body().string();
+            }
+        });
+    }
+
+    private static void awaitCoalesced(CoalescingInterceptor interceptor, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (interceptor.getCoalescedCount() < count) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testShareResponse() throws Exception {
+        CoalescingInterceptor interceptor = new CoalescingInterceptor();
+        FakeChain chain = new FakeChain();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            Future<String> leader = submit(executor, interceptor, chain);
+            chain.started.await();
+            Future<String> follower = submit(executor, interceptor, chain);
+            awaitCoalesced(interceptor, 1);
+            chain.release.countDown();
+
+            assertEquals("body1", leader.get(5, TimeUnit.SECONDS));
+            assertEquals("body1", follower.get(5, TimeUnit.SECONDS));
+            assertEquals(1, chain.proceeds.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testErrorWrappedPerFollower() throws Exception {
+        CoalescingInterceptor interceptor = new CoalescingInterceptor();
+        FakeChain chain = new FakeChain();
+        chain.error = new IOException("boom");
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            Future<String> leader = submit(executor, interceptor, chain);
+            chain.started.await();
+            Future<String> first = submit(executor, interceptor, chain);
+            Future<String> second = submit(executor, interceptor, chain);
+            awaitCoalesced(interceptor, 2);
+            chain.release.countDown();
+
+            assertSame(chain.error, failure(leader));
+            Throwable e1 = failure(first);
+            Throwable e2 = failure(second);
+            assertNotSame(e1, e2);
+            assertSame(chain.error, e1.getCause());
+            assertSame(chain.error, e2.getCause());
+            assertEquals(1, chain.proceeds.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFallbackWhenLeaderCanceled() throws Exception {
+        CoalescingInterceptor interceptor = new CoalescingInterceptor();
+        FakeChain chain = new FakeChain();
+        chain.error = new SocketException("Socket closed");
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            Future<String> leader = submit(executor, interceptor, chain);
+            chain.started.await();
+            Future<String> follower = submit(executor, interceptor, chain);
+            awaitCoalesced(interceptor, 1);
+            chain.release.countDown();
+
+            assertSame(chain.error, failure(leader));
+            assertEquals("body2", follower.get(5, TimeUnit.SECONDS));
+            assertEquals(2, chain.proceeds.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBoundedWait() throws Exception {
+        CoalescingInterceptor interceptor = new CoalescingInterceptor(1024, 100);
+        FakeChain chain = new FakeChain();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            Future<String> leader = submit(executor, interceptor, chain);
+            chain.started.await();
+
+            //第一个请求一直没有返回，超时后各自访问网络
+            Future<String> follower = submit(executor, interceptor, chain);
+            assertEquals("body2", follower.get(5, TimeUnit.SECONDS));
+
+            chain.release.countDown();
+            assertEquals("body1", leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Throwable failure(Future<String> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+}
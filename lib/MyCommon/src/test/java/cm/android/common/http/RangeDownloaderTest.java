@@ -0,0 +1,236 @@
+package cm.android.common.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import cm.android.common.BuildConfig;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 22)
+public class RangeDownloaderTest {
+
+    private static final int SIZE = 3 * 1024 * 1024 + 17;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] content = new byte[SIZE];
+
+    private MockWebServer server;
+
+    private RangeServer dispatcher;
+
+    private File target;
+
+    /**
+     * 按Range返回content的一段；If-Range与etag、lastModified都不同时返回整个文件
+     */
+    private class RangeServer extends Dispatcher {
+        volatile String etag = "\"v1\"";
+        volatile String lastModified;
+        volatile long failFrom = -1;
+        volatile String etagAfterProbe;
+        volatile boolean slow;
+        final List<String> ranges = new CopyOnWriteArrayList<>();
+        final List<String> ifRanges = new CopyOnWriteArrayList<>();
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String range = request.getHeader("Range");
+            ranges.add(range);
+            if ("bytes=0-0".equals(range) && etagAfterProbe != null) {
+                //探测之后文件发生变化
+                String probeEtag = etag;
+                etag = etagAfterProbe;
+                return new MockResponse()
+                        .setResponseCode(206)
+                        .setHeader("ETag", probeEtag)
+                        .setHeader("Content-Range", "bytes 0-0/" + SIZE)
+                        .setBody(new Buffer().write(content, 0, 1));
+            }
+            String ifRange = request.getHeader("If-Range");
+            if (ifRange != null) {
+                ifRanges.add(ifRange);
+            }
+            if (range == null || (ifRange != null && !ifRange.equals(etag) && !ifRange.equals(lastModified))) {
+                return new MockResponse().setHeader("ETag", etag).setBody(new Buffer().write(content));
+            }
+            String[] parts = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(parts[0]);
+            int end = Math.min(SIZE - 1, Integer.parseInt(parts[1]));
+            if (failFrom >= 0 && start >= failFrom) {
+                return new MockResponse().setResponseCode(500);
+            }
+            MockResponse response = new MockResponse()
+                    .setResponseCode(206)
+                    .setHeader("ETag", etag)
+                    .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + SIZE)
+                    .setBody(new Buffer().write(content, start, end - start + 1));
+            if (lastModified != null) {
+                response.setHeader("Last-Modified", lastModified);
+            }
+            if (slow && end > 0) {
+                response.throttleBody(64 * 1024, 1, TimeUnit.SECONDS);
+            }
+            return response;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        new Random(1).nextBytes(content);
+        dispatcher = new RangeServer();
+        server = new MockWebServer();
+        server.setDispatcher(dispatcher);
+        server.start();
+        target = new File(folder.getRoot(), "target.bin");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private RangeDownloader newDownloader() {
+        return new RangeDownloader(new OkHttpClient(), server.url("/file").toString(), target)
+                .setSegmentCount(3);
+    }
+
+    private File progressFile() {
+        return new File(target.getPath() + ".progress");
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testDownload() throws Exception {
+        File file = newDownloader().download();
+        assertTrue(Arrays.equals(content, read(file)));
+        assertFalse(progressFile().exists());
+        assertFalse(new File(target.getPath() + ".part").exists());
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        //第一段之后的段都失败
+        dispatcher.failFrom = 1;
+        try {
+            newDownloader().download();
+            fail();
+        } catch (IOException e) {
+            //ok
+        }
+        assertTrue(progressFile().exists());
+
+        dispatcher.failFrom = -1;
+        dispatcher.ranges.clear();
+        File file = newDownloader().download();
+        assertTrue(Arrays.equals(content, read(file)));
+        //第一段已完成，不再请求
+        for (String range : dispatcher.ranges) {
+            assertFalse(range, range.startsWith("bytes=0-") && !"bytes=0-0".equals(range));
+        }
+    }
+
+    @Test
+    public void testRemoteChangedDropsProgress() throws Exception {
+        //If-Range不匹配，各段都收到200
+        dispatcher.etagAfterProbe = "\"v2\"";
+        try {
+            newDownloader().download();
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("remote file changed"));
+        }
+        //最后一次保存进度不能重新创建进度文件
+        assertFalse(progressFile().exists());
+
+        dispatcher.etagAfterProbe = null;
+        File file = newDownloader().download();
+        assertTrue(Arrays.equals(content, read(file)));
+    }
+
+    /**
+     * 后面的段失败时不等前面的段下载完
+     */
+    @Test(timeout = 10 * 1000)
+    public void testFailureCancelsOtherSegments() throws Exception {
+        dispatcher.slow = true;
+        dispatcher.failFrom = 2 * (SIZE / 3);
+        try {
+            newDownloader().download();
+            fail();
+        } catch (IOException e) {
+            assertEquals("code = 500", e.getMessage());
+        }
+        assertTrue(progressFile().exists());
+    }
+
+    @Test
+    public void testWeakEtagUsesLastModified() throws Exception {
+        dispatcher.etag = "W/\"v1\"";
+        dispatcher.lastModified = "Mon, 19 Oct 2026 00:00:00 GMT";
+        File file = newDownloader().download();
+        assertTrue(Arrays.equals(content, read(file)));
+        assertFalse(dispatcher.ifRanges.isEmpty());
+        for (String ifRange : dispatcher.ifRanges) {
+            assertEquals(dispatcher.lastModified, ifRange);
+        }
+    }
+
+    @Test
+    public void testWeakEtagWithoutLastModified() throws Exception {
+        dispatcher.etag = "W/\"v1\"";
+        File file = newDownloader().download();
+        assertTrue(Arrays.equals(content, read(file)));
+        assertTrue(dispatcher.ifRanges.isEmpty());
+    }
+
+    @Test
+    public void testCanceledStaysCanceled() throws Exception {
+        RangeDownloader downloader = newDownloader();
+        downloader.cancel();
+        try {
+            downloader.download();
+            fail();
+        } catch (IOException e) {
+            assertEquals("Canceled", e.getMessage());
+        }
+        assertEquals(0, server.getRequestCount());
+    }
+}
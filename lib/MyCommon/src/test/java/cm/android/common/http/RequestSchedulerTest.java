@@ -0,0 +1,186 @@
+package cm.android.common.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class RequestSchedulerTest {
+
+    private MockWebServer server;
+
+    private OkHttpClient client;
+
+    private RequestScheduler scheduler;
+
+    private static class Recorder implements Callback {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String body;
+        volatile IOException error;
+        volatile int callbacks;
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            callbacks++;
+            error = e;
+            done.countDown();
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            callbacks++;
+            try {
+                body = response.body().string();
+            } catch (IOException e) {
+                error = e;
+            }
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient.Builder().retryOnConnectionFailure(false).build();
+        scheduler = new RequestScheduler(1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private Call newCall(String path, RequestScheduler.Priority priority) {
+        return client.newCall(new Request.Builder()
+                .url(server.url(path))
+                .tag(new RequestScheduler.PriorityTag(path, priority))
+                .build());
+    }
+
+    @Test
+    public void testPreemptAndResend() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.enqueue(new MockResponse().setBody("now"));
+        server.enqueue(new MockResponse().setBody("later"));
+
+        Recorder prefetch = new Recorder();
+        RequestScheduler.Handle handle = scheduler.enqueue(newCall("/prefetch", RequestScheduler.Priority.PREFETCH),
+                prefetch);
+        assertEquals("/prefetch", server.takeRequest().getPath());
+
+        Recorder immediate = new Recorder();
+        scheduler.enqueue(newCall("/immediate", RequestScheduler.Priority.IMMEDIATE), immediate);
+        immediate.await();
+        prefetch.await();
+
+        assertEquals("now", immediate.body);
+        assertEquals("later", prefetch.body);
+        assertNull(prefetch.error);
+        assertEquals(1, prefetch.callbacks);
+        assertFalse(handle.isCanceled());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void testRespondedNotPreempted() throws Exception {
+        server.enqueue(new MockResponse().setBody("prefetch"));
+        server.enqueue(new MockResponse().setBody("now"));
+
+        final CountDownLatch responded = new CountDownLatch(1);
+        final CountDownLatch immediateQueued = new CountDownLatch(1);
+        Recorder prefetch = new Recorder() {
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                responded.countDown();
+                try {
+                    immediateQueued.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignore) {
+                }
+                super.onResponse(call, response);
+            }
+        };
+        scheduler.enqueue(newCall("/prefetch", RequestScheduler.Priority.PREFETCH), prefetch);
+        assertTrue(responded.await(5, TimeUnit.SECONDS));
+
+        Recorder immediate = new Recorder();
+        scheduler.enqueue(newCall("/immediate", RequestScheduler.Priority.IMMEDIATE), immediate);
+        immediateQueued.countDown();
+        prefetch.await();
+        immediate.await();
+
+        assertEquals("prefetch", prefetch.body);
+        assertNull(prefetch.error);
+        assertEquals("now", immediate.body);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testCancelQueued() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+        Recorder first = new Recorder();
+        RequestScheduler.Handle firstHandle = scheduler.enqueue(newCall("/first", RequestScheduler.Priority.NORMAL),
+                first);
+        server.takeRequest();
+
+        Recorder second = new Recorder();
+        RequestScheduler.Handle secondHandle = scheduler.enqueue(
+                newCall("/second", RequestScheduler.Priority.NORMAL), second);
+        secondHandle.cancel();
+        second.await();
+        assertEquals("Canceled", second.error.getMessage());
+
+        firstHandle.cancel();
+        first.await();
+        assertTrue(first.error != null);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testCancelFollowsResend() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+        Recorder prefetch = new Recorder();
+        RequestScheduler.Handle prefetchHandle = scheduler.enqueue(
+                newCall("/prefetch", RequestScheduler.Priority.PREFETCH), prefetch);
+        server.takeRequest();
+
+        Recorder immediate = new Recorder();
+        RequestScheduler.Handle immediateHandle = scheduler.enqueue(
+                newCall("/immediate", RequestScheduler.Priority.IMMEDIATE), immediate);
+        //被抢占的请求以新的Call重新排队
+        assertEquals("/immediate", server.takeRequest().getPath());
+
+        prefetchHandle.cancel();
+        prefetch.await();
+        assertEquals("Canceled", prefetch.error.getMessage());
+        assertTrue(prefetchHandle.isCanceled());
+
+        immediateHandle.cancel();
+        immediate.await();
+        assertEquals(2, server.getRequestCount());
+    }
+}
@@ -0,0 +1,113 @@
+package cm.android.common.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class RetryInterceptorTest {
+
+    private MockWebServer server;
+
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient.Builder()
+                .addInterceptor(new RetryInterceptor(2))
+                .retryOnConnectionFailure(false)
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testRetryServerError() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "0"));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        Response response = client.newCall(new Request.Builder().url(server.url("/")).build()).execute();
+        assertEquals("ok", response.body().string());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testNoRetryForPost() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "0"));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        Request request = new Request.Builder().url(server.url("/"))
+                .post(RequestBody.create(MediaType.parse("text/plain"), "x")).build();
+        Response response = client.newCall(request).execute();
+        assertEquals(503, response.code());
+        response.body().close();
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testNoRetryAfterCancel() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        final Call call = client.newCall(new Request.Builder().url(server.url("/")).build());
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ignore) {
+                }
+                call.cancel();
+            }
+        }.start();
+
+        long start = System.nanoTime();
+        try {
+            call.execute();
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.toString(), RetryInterceptor.isCanceled(e));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testIsCanceled() throws Exception {
+        assertTrue(RetryInterceptor.isCanceled(new IOException("Canceled")));
+        assertTrue(RetryInterceptor.isCanceled(new SocketException("Socket closed")));
+        assertFalse(RetryInterceptor.isCanceled(new SocketException("Connection reset")));
+        assertFalse(RetryInterceptor.isCanceled(new IOException("unexpected end of stream")));
+    }
+
+    @Test
+    public void testBudgetsBounded() throws Exception {
+        for (int i = 0; i < RetryInterceptor.MAX_HOSTS * 2; i++) {
+            RetryInterceptor.budget("host" + i + ".example.com");
+        }
+        assertEquals(RetryInterceptor.MAX_HOSTS, RetryInterceptor.budgetCount());
+    }
+}
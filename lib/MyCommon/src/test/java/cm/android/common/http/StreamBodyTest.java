@@ -0,0 +1,197 @@
+package cm.android.common.http;
+
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Sink;
+import okio.Timeout;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class StreamBodyTest {
+
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File createFile(int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 丢弃写入的内容
+     */
+    private static final class CountingSink implements Sink {
+        long count;
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            source.skip(byteCount);
+            count += byteCount;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void testFileSegment() throws Exception {
+        File file = createFile(10000);
+        byte[] data = readFile(file);
+        RequestBody body = StreamBody.create(OCTET_STREAM, file, 100, 5000);
+        assertEquals(5000, body.contentLength());
+
+        //可重复写入
+        for (int i = 0; i < 2; i++) {
+            Buffer buffer = new Buffer();
+            body.writeTo(buffer);
+            assertTrue(Arrays.equals(Arrays.copyOfRange(data, 100, 5100), buffer.readByteArray()));
+        }
+        assertFalse(StreamBody.isOneShot(body));
+    }
+
+    @Test
+    public void testOneShot() throws Exception {
+        RequestBody body = StreamBody.create(OCTET_STREAM, new ByteArrayInputStream(new byte[]{1, 2, 3}), 3);
+        assertTrue(StreamBody.isOneShot(body));
+
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        assertEquals(3, buffer.size());
+        try {
+            body.writeTo(new Buffer());
+            fail();
+        } catch (IOException e) {
+            //ok
+        }
+    }
+
+    @Test
+    public void testOneShotNotRetried() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "0"));
+        server.enqueue(new MockResponse());
+        server.start();
+        try {
+            OkHttpClient client = new OkHttpClient.Builder()
+                    .addInterceptor(new RetryInterceptor(2))
+                    .build();
+            RequestBody body = StreamBody.create(OCTET_STREAM, new ByteArrayInputStream(new byte[]{1}), 1);
+            Response response = client.newCall(new Request.Builder().url(server.url("/")).put(body).build())
+                    .execute();
+            assertEquals(503, response.code());
+            response.body().close();
+            assertEquals(1, server.getRequestCount());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    /**
+     * 上传8MB文件：StreamBody边读边写，byte[]先把整个文件读入内存
+     */
+    @Ignore("benchmark")
+    @Test
+    public void testStreamVsByteArray() throws Exception {
+        int size = 8 * 1024 * 1024;
+        int rounds = 10;
+        File file = createFile(size);
+        Runtime runtime = Runtime.getRuntime();
+
+        //预热
+        write(StreamBody.create(OCTET_STREAM, file));
+        write(RequestBody.create(OCTET_STREAM, readFile(file)));
+
+        long streamPeak = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            System.gc();
+            long before = runtime.totalMemory() - runtime.freeMemory();
+            RequestBody body = StreamBody.create(OCTET_STREAM, file);
+            assertEquals(size, write(body));
+            streamPeak = Math.max(streamPeak, runtime.totalMemory() - runtime.freeMemory() - before);
+        }
+        long streamNanos = System.nanoTime() - start;
+
+        long bytesPeak = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            System.gc();
+            long before = runtime.totalMemory() - runtime.freeMemory();
+            RequestBody body = RequestBody.create(OCTET_STREAM, readFile(file));
+            assertEquals(size, write(body));
+            bytesPeak = Math.max(bytesPeak, runtime.totalMemory() - runtime.freeMemory() - before);
+        }
+        long bytesNanos = System.nanoTime() - start;
+
+        long mb = (long) size * rounds / (1024 * 1024);
+        System.out.println("stream: " + mb * 1000000000L / Math.max(1, streamNanos) + "MB/s, peak = "
+                + streamPeak / 1024 + "KB");
+        System.out.println("byte[]: " + mb * 1000000000L / Math.max(1, bytesNanos) + "MB/s, peak = "
+                + bytesPeak / 1024 + "KB");
+        //byte[]至少多占用一份文件大小的内存
+        assertTrue(streamPeak < bytesPeak);
+    }
+
+    private static long write(RequestBody body) throws IOException {
+        CountingSink counting = new CountingSink();
+        BufferedSink sink = Okio.buffer(counting);
+        body.writeTo(sink);
+        sink.flush();
+        return counting.count;
+    }
+}
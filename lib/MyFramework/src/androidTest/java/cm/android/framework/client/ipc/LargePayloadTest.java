@@ -0,0 +1,64 @@
+package cm.android.framework.client.ipc;
+
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.test.InstrumentationTestCase;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class LargePayloadTest extends InstrumentationTestCase {
+
+    private static final int SIZE = 1024 * 1024;
+
+    public void testReadInReverseOrder() throws Exception {
+        final byte[] first = payload(1);
+        final byte[] second = payload(2);
+        final ParcelFileDescriptor firstPfd = LargePayload.pipeFrom(first);
+        final ParcelFileDescriptor secondPfd = LargePayload.pipeFrom(second);
+
+        final byte[][] result = new byte[2][];
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        //两个payload都超过管道缓冲区，写线程共用时先读第二个会一直阻塞
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result[1] = LargePayload.read(secondPfd);
+                    result[0] = LargePayload.read(firstPfd);
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        reader.start();
+        reader.join(10 * 1000);
+
+        assertFalse("reader blocked", reader.isAlive());
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(Arrays.equals(first, result[0]));
+        assertTrue(Arrays.equals(second, result[1]));
+    }
+
+    public void testPutReturnsPipe() throws Exception {
+        byte[] data = payload(3);
+        Bundle bundle = new Bundle();
+        ParcelFileDescriptor pfd = LargePayload.put(bundle, "key", data);
+        assertNotNull(pfd);
+        assertSame(pfd, bundle.get("key"));
+        //读完后关闭
+        assertTrue(Arrays.equals(data, LargePayload.read(pfd)));
+
+        assertNull(LargePayload.put(bundle, "small", new byte[16]));
+    }
+
+    private static byte[] payload(int seed) {
+        byte[] data = new byte[SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * seed);
+        }
+        return data;
+    }
+}
@@ -12,6 +12,7 @@ import android.os.Looper;
 
 import cm.android.applications.AppUtil;
 import cm.android.framework.client.ipc.BinderFactory;
+import cm.android.framework.client.ipc.IpcStats;
 import cm.android.framework.client.ipc.ServiceManager;
 import cm.android.framework.component.CoreReceiver;
 import cm.android.framework.component.IBinderServer;
@@ -188,6 +189,24 @@ public class Framework {
         return response.getBundle(ServerProvider.KEY_BINDER);
     }
 
+    /**
+     * server进程的IPC统计，需先在server进程调用{@link cm.android.framework.client.ipc.IpcStats#setEnabled}
+     */
+    public String dumpIpcStats() {
+        Bundle response = ServerProvider.Proxy.dumpIpcStats(context);
+        if (response == null) {
+            return null;
+        }
+        return response.getString(ServerProvider.KEY_IPC_STATS);
+    }
+
+    /**
+     * 当前进程（通常是client）的IPC统计：ProviderCall、getService和AIDL代理的调用都在调用方进程记录
+     */
+    public static String dumpLocalIpcStats() {
+        return IpcStats.dump();
+    }
+
     public static IBinder getService(String name) {
 //        return ServiceManagerNative.getService(name);
         return ServiceManager.getService(name);
@@ -197,6 +216,10 @@ public class Framework {
         return BinderFactory.getProxy(name, proxyClass);
     }
 
+    public static <T extends BinderFactory.IBinderProxy> T getBinderProxy(String name, BinderFactory.Creator<T> creator) {
+        return BinderFactory.getProxy(name, creator);
+    }
+
     public static void addService(String name, IBinder service) {
 //        ServiceManagerNative.addService(name, service);
         ServiceManager.addService(name, service);
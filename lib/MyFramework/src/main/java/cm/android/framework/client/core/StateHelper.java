@@ -1,22 +1,28 @@
 package cm.android.framework.client.core;
 
 import android.content.Context;
+import android.os.Process;
 
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.Properties;
 
 import cm.java.util.IoUtil;
 
-import static android.content.Context.MODE_PRIVATE;
-
+/**
+ * 状态文件：写入时先写临时文件再rename，保证其它进程读到的是完整内容；
+ * 读取时按lastModified+length判断文件是否变化，未变化直接返回内存中的值
+ */
 public class StateHelper {
 
     private static final String STATE_FILE_NAME = "framework_app_status";
 
     private static final String TAG_STATE = "state";
 
+    private static volatile Snapshot sSnapshot;
+
     public static boolean isActive(Context context) {
         return readState(context);
     }
@@ -24,24 +30,51 @@ public class StateHelper {
     public static void writeState(Context context, boolean state) {
         LogUtil.getLogger().info("StateHolder:writeState:state = " + state);
 
-        Properties properties = new Properties();
-        properties.setProperty(TAG_STATE, String.valueOf(state));
+        File file = getFile(context);
+        File tmp = new File(file.getPath() + "." + Process.myPid() + ".tmp");
+        //兼容Properties格式，true/false长度不同，状态变化必然改变文件长度
+        byte[] content = (TAG_STATE + "=" + state + "\n").getBytes();
 
-        OutputStream os = null;
+        FileOutputStream os = null;
         try {
-            os = context.openFileOutput(STATE_FILE_NAME, MODE_PRIVATE);
-            properties.store(os, "writeState:state = " + state);
+            os = new FileOutputStream(tmp);
+            os.write(content);
+            os.flush();
+            os.getFD().sync();
+            os.close();
+            os = null;
+
+            if (!tmp.renameTo(file)) {
+                throw new IOException("rename failed:" + tmp);
+            }
+            sSnapshot = new Snapshot(file.lastModified(), file.length(), state);
         } catch (IOException e) {
             LogUtil.getLogger().error(e.getMessage());
+            IoUtil.delete(tmp);
         } finally {
             IoUtil.closeQuietly(os);
         }
     }
 
     public static boolean readState(Context context) {
+        File file = getFile(context);
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        Snapshot snapshot = sSnapshot;
+        if (snapshot != null && snapshot.lastModified == lastModified && snapshot.length == length) {
+            return snapshot.state;
+        }
+
+        boolean state = load(file);
+        sSnapshot = new Snapshot(lastModified, length, state);
+        return state;
+    }
+
+    private static boolean load(File file) {
         FileInputStream fis = null;
         try {
-            fis = context.openFileInput(STATE_FILE_NAME);
+            fis = new FileInputStream(file);
             Properties properties = new Properties();
             properties.load(fis);
 
@@ -55,4 +88,20 @@ public class StateHelper {
             IoUtil.closeQuietly(fis);
         }
     }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), STATE_FILE_NAME);
+    }
+
+    private static final class Snapshot {
+        final long lastModified;
+        final long length;
+        final boolean state;
+
+        Snapshot(long lastModified, long length, boolean state) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.state = state;
+        }
+    }
 }
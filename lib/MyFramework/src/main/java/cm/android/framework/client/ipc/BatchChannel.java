@@ -0,0 +1,202 @@
+package cm.android.framework.client.ipc;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.Process;
+import android.os.RemoteException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cm.android.framework.client.core.LogUtil;
+import cm.android.framework.interfaces.IBatchTransaction;
+
+/**
+ * 合并发送fire-and-forget类型的调用：在{@code windowMillis}内或累计{@code maxSize}个调用后，
+ * 通过一次oneway的{@link IBatchTransaction#transact}发送给server，server端按顺序拆包执行。
+ * <p>
+ * 同一个channel内的调用保证顺序；一批的序列化大小不超过{@code maxBytes}，
+ * 避免超出oneway事务共享的binder缓冲区（约512K）
+ */
+public final class BatchChannel {
+
+    public static final String KEY_METHOD = "_batch_|_method_";
+
+    private static final int DEFAULT_MAX_SIZE = 32;
+
+    private static final long DEFAULT_WINDOW = 50L;
+
+    private static final int DEFAULT_MAX_BYTES = 128 * 1024;
+
+    private static volatile Handler sHandler;
+
+    private final String name;
+    private final int maxSize;
+    private final int maxBytes;
+    private final long windowMillis;
+
+    private final Object lock = new Object();
+    private final Object sendLock = new Object();
+    private ArrayList<Bundle> pending = new ArrayList<>();
+    private ArrayList<Integer> pendingSizes = new ArrayList<>();
+    private int pendingBytes;
+
+    private long dropped;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param name 通过{@link ServiceManager#addService}注册的{@link IBatchTransaction}服务名
+     */
+    public BatchChannel(String name) {
+        this(name, DEFAULT_MAX_SIZE, DEFAULT_WINDOW);
+    }
+
+    public BatchChannel(String name, int maxSize, long windowMillis) {
+        this(name, maxSize, DEFAULT_MAX_BYTES, windowMillis);
+    }
+
+    public BatchChannel(String name, int maxSize, int maxBytes, long windowMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize = " + maxSize);
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes = " + maxBytes);
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.maxBytes = maxBytes;
+        this.windowMillis = windowMillis;
+    }
+
+    private static Handler getHandler() {
+        if (sHandler == null) {
+            synchronized (BatchChannel.class) {
+                if (sHandler == null) {
+                    HandlerThread thread = new HandlerThread("framework:batch", Process.THREAD_PRIORITY_BACKGROUND);
+                    thread.start();
+                    sHandler = new Handler(thread.getLooper());
+                }
+            }
+        }
+        return sHandler;
+    }
+
+    /**
+     * 加入一个调用，不会阻塞调用线程
+     */
+    public void post(String method, Bundle args) {
+        Bundle call = (args == null) ? new Bundle() : new Bundle(args);
+        call.putString(KEY_METHOD, method);
+        int bytes = sizeOf(call);
+        if (bytes > maxBytes) {
+            LogUtil.getLogger().warn("BatchChannel:post:name = {},method = {},bytes = {} > maxBytes = {}",
+                    name, method, bytes, maxBytes);
+        }
+
+        Handler handler = getHandler();
+        synchronized (lock) {
+            pending.add(call);
+            pendingSizes.add(bytes);
+            pendingBytes += bytes;
+            int size = pending.size();
+            if (size >= maxSize || pendingBytes >= maxBytes) {
+                handler.removeCallbacks(flushRunnable);
+                handler.post(flushRunnable);
+            } else if (size == 1) {
+                handler.postDelayed(flushRunnable, windowMillis);
+            }
+        }
+    }
+
+    /**
+     * 立即发送所有未发送的调用
+     */
+    public void flush() {
+        synchronized (sendLock) {
+            List<Bundle> calls;
+            List<Integer> sizes;
+            synchronized (lock) {
+                getHandler().removeCallbacks(flushRunnable);
+                if (pending.isEmpty()) {
+                    return;
+                }
+                calls = pending;
+                sizes = pendingSizes;
+                pending = new ArrayList<>();
+                pendingSizes = new ArrayList<>();
+                pendingBytes = 0;
+            }
+
+            //按maxBytes拆成多次发送，单个超过maxBytes的调用单独发送
+            int start = 0;
+            int bytes = 0;
+            for (int i = 0; i < calls.size(); i++) {
+                int size = sizes.get(i);
+                if (i > start && bytes + size > maxBytes) {
+                    send(calls.subList(start, i));
+                    start = i;
+                    bytes = 0;
+                }
+                bytes += size;
+            }
+            send(calls.subList(start, calls.size()));
+        }
+    }
+
+    /**
+     * 因service不存在或已死亡丢弃的调用数
+     */
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    private void send(List<Bundle> calls) {
+        IBinder binder = ServiceManager.getService(name);
+        if (binder == null) {
+            LogUtil.getLogger().error("BatchChannel:send:binder = null,name = {},drop = {},dropped = {}",
+                    name, calls.size(), onDropped(calls.size()));
+            return;
+        }
+
+        try {
+            IBatchTransaction.Stub.asInterface(binder).transact(calls);
+        } catch (RemoteException e) {
+            LogUtil.getLogger().error("BatchChannel:send:name = " + name + ",drop = " + calls.size()
+                    + ",dropped = " + onDropped(calls.size()), e);
+        }
+    }
+
+    private long onDropped(int count) {
+        synchronized (lock) {
+            dropped += count;
+            return dropped;
+        }
+    }
+
+    private static int sizeOf(Bundle call) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(call);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package cm.android.framework.client.ipc;
 
 import android.os.IBinder;
+import android.os.SystemClock;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import cm.android.framework.client.core.LogUtil;
 import cm.java.proguard.annotations.Keep;
@@ -18,29 +21,70 @@ public final class BinderFactory {
         void binderDied();
     }
 
-//    public static HashMap<String, Class> proxy = ObjectUtil.newHashMap();
+    /**
+     * 无反射创建proxy，优先于{@link #getProxy(String, Class)}使用
+     */
+    public static interface Creator<T extends IBinderProxy> {
+        T create();
+    }
+
+    /**
+     * name -> 已创建的proxy，同一个name只创建一次
+     */
+    private static final Map<String, ProxyHolder> sProxies = new ConcurrentHashMap<>();
+
+    public static <T> T getProxy(String name, final Class<? extends IBinderProxy> proxyClass) {
+        ProxyHolder holder = sProxies.get(name);
+        if (holder != null && holder.isBound() && holder.proxy.getClass() == proxyClass) {
+            return (T) holder.proxy;
+        }
+
+        return getProxy(name, new Creator<IBinderProxy>() {
+            @Override
+            public IBinderProxy create() {
+                return newInstance(proxyClass);
+            }
+        }, proxyClass);
+    }
+
+    public static <T extends IBinderProxy> T getProxy(String name, Creator<T> creator) {
+        return getProxy(name, creator, null);
+    }
+
+    private static <T> T getProxy(String name, Creator<? extends IBinderProxy> creator, Class<?> proxyClass) {
+        ProxyHolder holder = sProxies.get(name);
+        if (holder != null && holder.isBound() && (proxyClass == null || holder.proxy.getClass() == proxyClass)) {
+            return (T) holder.proxy;
+        }
 
-    public static <T> T getProxy(String name, Class<? extends IBinderProxy> proxyClass) {
-//        Class proxyClass = proxy.get(name);
-//        if (proxyClass == null) {
-//            return null;
-//        }
+        synchronized (sProxies) {
+            holder = sProxies.get(name);
+            if (holder == null || (proxyClass != null && holder.proxy.getClass() != proxyClass)) {
+                IBinderProxy proxy = creator.create();
+                if (proxy == null) {
+                    return null;
+                }
+                holder = new ProxyHolder(name, proxy);
+                sProxies.put(name, holder);
+            }
+        }
+
+        holder.bindIfNeeded();
+        return (T) holder.proxy;
+    }
+
+    /**
+     * 移除缓存的proxy，下次get时重新创建
+     */
+    public static void removeProxy(String name) {
+        sProxies.remove(name);
+    }
 
+    private static IBinderProxy newInstance(Class<? extends IBinderProxy> proxyClass) {
         try {
             Constructor constructor = proxyClass.getDeclaredConstructor();
             constructor.setAccessible(true);
-            final IBinderProxy proxy = (IBinderProxy) constructor.newInstance();
-
-//            IBinder binder = ServiceManagerNative.getService(name);
-            IBinder binder = ServiceManager.getService(name);
-            LocalProxyUtils.linkBinderDied(binder, new IBinder.DeathRecipient() {
-                @Override
-                public void binderDied() {
-                    proxy.binderDied();
-                }
-            });
-            proxy.bind(binder);
-            return (T) proxy;
+            return (IBinderProxy) constructor.newInstance();
         } catch (NoSuchMethodException e) {
             LogUtil.getLogger().error(e.getMessage(), e);
             return null;
@@ -55,4 +99,67 @@ public final class BinderFactory {
             return null;
         }
     }
+
+    /**
+     * 获取service失败后的重试间隔，每次失败翻倍
+     */
+    private static final long MIN_RETRY_DELAY = 200;
+
+    private static final long MAX_RETRY_DELAY = 30 * 1000;
+
+    private static final class ProxyHolder {
+        private final String name;
+        private final IBinderProxy proxy;
+        private volatile IBinder binder;
+
+        private long retryDelay;
+        private long nextRetryTime;
+
+        ProxyHolder(String name, IBinderProxy proxy) {
+            this.name = name;
+            this.proxy = proxy;
+        }
+
+        boolean isBound() {
+            return binder != null;
+        }
+
+        synchronized void bindIfNeeded() {
+            if (binder != null) {
+                return;
+            }
+            //失败后退避，避免每次get都发起IPC
+            long now = SystemClock.elapsedRealtime();
+            if (now < nextRetryTime) {
+                return;
+            }
+
+//            IBinder binder = ServiceManagerNative.getService(name);
+            final IBinder service = ServiceManager.getService(name);
+            if (service == null) {
+                retryDelay = retryDelay == 0 ? MIN_RETRY_DELAY : Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+                nextRetryTime = now + retryDelay;
+                LogUtil.getLogger().error("bindIfNeeded:service = null,name = {},retryDelay = {}", name, retryDelay);
+                return;
+            }
+            retryDelay = 0;
+            nextRetryTime = 0;
+
+            LocalProxyUtils.linkBinderDied(service, new IBinder.DeathRecipient() {
+                @Override
+                public void binderDied() {
+                    //下次get时重新bind；已经重新bind时是旧binder的通知，忽略，
+                    //在锁内通知proxy，避免清掉重新bind后的状态
+                    synchronized (ProxyHolder.this) {
+                        if (binder == service) {
+                            binder = null;
+                            proxy.binderDied();
+                        }
+                    }
+                }
+            });
+            proxy.bind(service);
+            binder = service;
+        }
+    }
 }
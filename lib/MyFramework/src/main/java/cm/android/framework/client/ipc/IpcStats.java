@@ -0,0 +1,248 @@
+package cm.android.framework.client.ipc;
+
+import android.os.Bundle;
+import android.os.DeadObjectException;
+import android.os.Parcel;
+import android.os.Process;
+import android.os.RemoteException;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 当前进程binder层调用的统计，默认关闭，每个进程各自统计和{@link #dump}。
+ * <p>
+ * 每个方法的统计分为{@link #STRIPES}个分段，线程按id落到其中一段，各段单独加锁，
+ * 调用路径上的锁竞争很小；dump时合并所有分段，不会有未合并的数据
+ */
+public final class IpcStats {
+
+    private static final int STRIPES = 8;
+
+    /**
+     * 延迟直方图：第i个桶为[2^(i-1), 2^i)微秒，最后一个桶为溢出
+     */
+    private static final int BUCKETS = 22;
+
+    private static volatile boolean sEnabled = false;
+
+    private static final ConcurrentHashMap<String, Striped> sRecords = new ConcurrentHashMap<>();
+
+    private IpcStats() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * @return 开始时间，未开启时返回0
+     */
+    public static long begin() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    public static void end(String method, long begin, Throwable error) {
+        end(method, begin, -1, error);
+    }
+
+    /**
+     * @param parcelSize 数据大小，未知时传-1
+     */
+    public static void end(String method, long begin, int parcelSize, Throwable error) {
+        if (begin == 0 || !sEnabled) {
+            return;
+        }
+        Striped striped = sRecords.get(method);
+        if (striped == null) {
+            Striped created = new Striped();
+            striped = sRecords.putIfAbsent(method, created);
+            if (striped == null) {
+                striped = created;
+            }
+        }
+        striped.add(System.nanoTime() - begin, parcelSize, error);
+    }
+
+    /**
+     * 仅在开启时计算，需要序列化一次Bundle
+     */
+    public static int sizeOf(Bundle bundle) {
+        if (!sEnabled || bundle == null) {
+            return -1;
+        }
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(bundle);
+            return parcel.dataSize();
+        } catch (RuntimeException e) {
+            return -1;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    public static void reset() {
+        sRecords.clear();
+    }
+
+    public static String dump() {
+        StringWriter writer = new StringWriter();
+        PrintWriter pw = new PrintWriter(writer);
+        dump(pw);
+        pw.flush();
+        return writer.toString();
+    }
+
+    public static void dump(PrintWriter pw) {
+        List<Map.Entry<String, Record>> entries = new ArrayList<>(sRecords.size());
+        for (Map.Entry<String, Striped> entry : sRecords.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().snapshot()));
+        }
+
+        Collections.sort(entries, new Comparator<Map.Entry<String, Record>>() {
+            @Override
+            public int compare(Map.Entry<String, Record> lhs, Map.Entry<String, Record> rhs) {
+                long l = lhs.getValue().totalNanos;
+                long r = rhs.getValue().totalNanos;
+                return l < r ? 1 : (l == r ? 0 : -1);
+            }
+        });
+
+        pw.println("IpcStats: pid = " + Process.myPid() + ", enabled = " + sEnabled + ", methods = " + entries.size());
+        for (Map.Entry<String, Record> entry : entries) {
+            entry.getValue().dump(entry.getKey(), pw);
+        }
+    }
+
+    private static final class Striped {
+        private final Record[] cells = new Record[STRIPES];
+
+        Striped() {
+            for (int i = 0; i < STRIPES; i++) {
+                cells[i] = new Record();
+            }
+        }
+
+        void add(long nanos, int parcelSize, Throwable error) {
+            Record cell = cells[(int) (Thread.currentThread().getId() & (STRIPES - 1))];
+            synchronized (cell) {
+                cell.add(nanos, parcelSize, error);
+            }
+        }
+
+        Record snapshot() {
+            Record copy = new Record();
+            for (Record cell : cells) {
+                synchronized (cell) {
+                    copy.merge(cell);
+                }
+            }
+            return copy;
+        }
+    }
+
+    private static final class Record {
+        long count;
+        long totalNanos;
+        long maxNanos;
+        long parcelCount;
+        long parcelBytes;
+        long maxParcel;
+        long remoteErrors;
+        long deadErrors;
+        long otherErrors;
+        final long[] histogram = new long[BUCKETS];
+
+        void add(long nanos, int parcelSize, Throwable error) {
+            count++;
+            totalNanos += nanos;
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+            histogram[bucket(nanos)]++;
+
+            if (parcelSize >= 0) {
+                parcelCount++;
+                parcelBytes += parcelSize;
+                if (parcelSize > maxParcel) {
+                    maxParcel = parcelSize;
+                }
+            }
+
+            if (error instanceof DeadObjectException) {
+                deadErrors++;
+            } else if (error instanceof RemoteException) {
+                remoteErrors++;
+            } else if (error != null) {
+                otherErrors++;
+            }
+        }
+
+        void merge(Record other) {
+            count += other.count;
+            totalNanos += other.totalNanos;
+            maxNanos = Math.max(maxNanos, other.maxNanos);
+            parcelCount += other.parcelCount;
+            parcelBytes += other.parcelBytes;
+            maxParcel = Math.max(maxParcel, other.maxParcel);
+            remoteErrors += other.remoteErrors;
+            deadErrors += other.deadErrors;
+            otherErrors += other.otherErrors;
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] += other.histogram[i];
+            }
+        }
+
+        private static int bucket(long nanos) {
+            long micros = nanos / 1000;
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            return Math.min(bucket, BUCKETS - 1);
+        }
+
+        /**
+         * 按直方图估算分位数，返回桶上界(微秒)
+         */
+        private long percentile(double p) {
+            long target = (long) Math.ceil(count * p);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram[i];
+                if (seen >= target) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (BUCKETS - 1);
+        }
+
+        void dump(String method, PrintWriter pw) {
+            long avgMicros = count == 0 ? 0 : totalNanos / count / 1000;
+            pw.print("  ");
+            pw.println(method);
+            pw.println("    count = " + count
+                    + ", avg = " + avgMicros + "us"
+                    + ", p50 <= " + percentile(0.5) + "us"
+                    + ", p90 <= " + percentile(0.9) + "us"
+                    + ", p99 <= " + percentile(0.99) + "us"
+                    + ", max = " + maxNanos / 1000 + "us");
+            if (parcelCount > 0) {
+                pw.println("    parcel: avg = " + parcelBytes / parcelCount + "B, max = " + maxParcel + "B");
+            }
+            if (remoteErrors + deadErrors + otherErrors > 0) {
+                pw.println("    errors: remote = " + remoteErrors + ", dead = " + deadErrors + ", other = " + otherErrors);
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package cm.android.framework.client.ipc;
+
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cm.android.framework.client.core.LogUtil;
+import cm.android.thread.PriorityThreadFactory;
+import cm.java.util.IoUtil;
+
+/**
+ * 跨进程传递大数据：小于阈值直接放入Bundle，超过阈值通过{@link ParcelFileDescriptor}管道传递，
+ * 绕开binder单次事务约1M的限制。
+ * <p>
+ * 发送端：{@link #put(Bundle, String, byte[])}或AIDL接口返回{@link #pipeFrom(byte[])}；
+ * 接收端：{@link #openStream(Bundle, String)}/{@link #get(Bundle, String)}或{@link #read(ParcelFileDescriptor)}
+ */
+public final class LargePayload {
+
+    public static final int DEFAULT_THRESHOLD = 256 * 1024;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * 同时写入的管道数上限，超过时{@link #pipeFrom(InputStream)}返回null
+     */
+    private static final int MAX_WRITERS = 16;
+
+    /**
+     * 对端超过该时间没有读完时放弃写入
+     */
+    private static final long WRITE_TIMEOUT = 30 * 1000;
+
+    /**
+     * 每个管道一个写线程：写满管道缓冲区（约64K）后会阻塞到读端读取，共用线程时
+     * 乱序读取或未读取的payload会阻塞之后所有的写入
+     */
+    private static final ExecutorService sWriter = new ThreadPoolExecutor(0, MAX_WRITERS,
+            30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+            new PriorityThreadFactory("framework:payload", Process.THREAD_PRIORITY_BACKGROUND));
+
+    private static final ScheduledThreadPoolExecutor sWatchdog = new ScheduledThreadPoolExecutor(1,
+            new PriorityThreadFactory("framework:payload-watchdog", Process.THREAD_PRIORITY_BACKGROUND));
+
+    static {
+        sWatchdog.setKeepAliveTime(30, TimeUnit.SECONDS);
+        sWatchdog.allowCoreThreadTimeOut(true);
+    }
+
+    private LargePayload() {
+    }
+
+    /**
+     * @return 同{@link #put(Bundle, String, byte[], int)}
+     */
+    public static ParcelFileDescriptor put(Bundle bundle, String key, byte[] data) {
+        return put(bundle, key, data, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @return 超过阈值时返回管道的读端，发送完成后调用方需关闭；否则返回null
+     */
+    public static ParcelFileDescriptor put(Bundle bundle, String key, byte[] data, int threshold) {
+        if (data == null) {
+            return null;
+        }
+
+        if (data.length < threshold) {
+            bundle.putByteArray(key, data);
+            return null;
+        }
+
+        ParcelFileDescriptor pfd = pipeFrom(data);
+        if (pfd == null) {
+            bundle.putByteArray(key, data);
+            return null;
+        }
+        bundle.putParcelable(key, pfd);
+        return pfd;
+    }
+
+    public static byte[] get(Bundle bundle, String key) {
+        InputStream is = openStream(bundle, key);
+        if (is == null) {
+            return null;
+        }
+
+        try {
+            return readFully(is);
+        } catch (IOException e) {
+            LogUtil.getLogger().error("LargePayload:get:key = " + key, e);
+            return null;
+        } finally {
+            IoUtil.closeQuietly(is);
+        }
+    }
+
+    /**
+     * 流式读取，调用方负责关闭
+     */
+    public static InputStream openStream(Bundle bundle, String key) {
+        if (bundle == null) {
+            return null;
+        }
+
+        Object value = bundle.get(key);
+        if (value instanceof byte[]) {
+            return new ByteArrayInputStream((byte[]) value);
+        } else if (value instanceof ParcelFileDescriptor) {
+            return new ParcelFileDescriptor.AutoCloseInputStream((ParcelFileDescriptor) value);
+        }
+        return null;
+    }
+
+    /**
+     * 返回管道读端，数据在后台线程写入。作为AIDL返回值时binder写完会自动关闭。
+     * 写线程已满或创建管道失败时返回null；对端{@link #WRITE_TIMEOUT}内没有读完时放弃写入
+     */
+    public static ParcelFileDescriptor pipeFrom(byte[] data) {
+        return pipeFrom(new ByteArrayInputStream(data));
+    }
+
+    public static ParcelFileDescriptor pipeFrom(InputStream source) {
+        ParcelFileDescriptor[] pipe;
+        ParcelFileDescriptor drain;
+        try {
+            pipe = ParcelFileDescriptor.createPipe();
+        } catch (IOException e) {
+            LogUtil.getLogger().error(e.getMessage(), e);
+            IoUtil.closeQuietly(source);
+            return null;
+        }
+        try {
+            drain = pipe[0].dup();
+        } catch (IOException e) {
+            LogUtil.getLogger().error(e.getMessage(), e);
+            IoUtil.closeQuietly(source);
+            IoUtil.closeQuietly(pipe[0]);
+            IoUtil.closeQuietly(pipe[1]);
+            return null;
+        }
+
+        final PipeWriter writer = new PipeWriter(source, pipe[1], drain);
+        try {
+            sWriter.execute(writer);
+        } catch (RejectedExecutionException e) {
+            LogUtil.getLogger().error("LargePayload:pipeFrom:too many writers");
+            IoUtil.closeQuietly(source);
+            IoUtil.closeQuietly(pipe[0]);
+            IoUtil.closeQuietly(pipe[1]);
+            IoUtil.closeQuietly(drain);
+            return null;
+        }
+        sWatchdog.schedule(new Runnable() {
+            @Override
+            public void run() {
+                writer.onTimeout();
+            }
+        }, WRITE_TIMEOUT, TimeUnit.MILLISECONDS);
+        return pipe[0];
+    }
+
+    public static byte[] read(ParcelFileDescriptor pfd) throws IOException {
+        if (pfd == null) {
+            return null;
+        }
+
+        InputStream is = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
+        try {
+            return readFully(is);
+        } finally {
+            IoUtil.closeQuietly(is);
+        }
+    }
+
+    /**
+     * 写入管道；超时后从本地dup的读端读空管道，让阻塞在write上的写线程返回
+     */
+    private static final class PipeWriter implements Runnable {
+        private static final int RUNNING = 0;
+        private static final int DONE = 1;
+        private static final int TIMED_OUT = 2;
+
+        private final InputStream source;
+        private final ParcelFileDescriptor writeEnd;
+        private final ParcelFileDescriptor drain;
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
+
+        PipeWriter(InputStream source, ParcelFileDescriptor writeEnd, ParcelFileDescriptor drain) {
+            this.source = source;
+            this.writeEnd = writeEnd;
+            this.drain = drain;
+        }
+
+        @Override
+        public void run() {
+            OutputStream os = new ParcelFileDescriptor.AutoCloseOutputStream(writeEnd);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int len;
+                while ((len = source.read(buffer)) != -1) {
+                    if (state.get() == TIMED_OUT) {
+                        throw new IOException("write timeout");
+                    }
+                    os.write(buffer, 0, len);
+                }
+                os.flush();
+            } catch (IOException e) {
+                //读端提前关闭或超时
+                LogUtil.getLogger().error("LargePayload:write:" + e.getMessage());
+            } finally {
+                IoUtil.closeQuietly(source);
+                IoUtil.closeQuietly(os);
+                //超时时drain由watchdog关闭
+                if (state.compareAndSet(RUNNING, DONE)) {
+                    IoUtil.closeQuietly(drain);
+                }
+            }
+        }
+
+        void onTimeout() {
+            if (!state.compareAndSet(RUNNING, TIMED_OUT)) {
+                return;
+            }
+            LogUtil.getLogger().error("LargePayload:write timeout");
+            //写线程最多再写完当前一块，关闭写端后读到-1
+            InputStream is = new ParcelFileDescriptor.AutoCloseInputStream(drain);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (is.read(buffer) != -1) {
+                    //丢弃
+                }
+            } catch (IOException ignore) {
+            } finally {
+                IoUtil.closeQuietly(is);
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int len;
+        while ((len = is.read(buffer)) != -1) {
+            os.write(buffer, 0, len);
+        }
+        return os.toByteArray();
+    }
+}
@@ -5,6 +5,7 @@ import android.os.IBinder;
 import android.os.RemoteException;
 
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 
@@ -20,16 +21,24 @@ public class LocalProxyUtils {
      * @param base           base object
      * @return proxy object
      */
-    public static <T> T genProxy(Class<T> interfaceClass, final Object base) {
+    public static <T> T genProxy(final Class<T> interfaceClass, final Object base) {
         //noinspection unchecked
         return (T) Proxy.newProxyInstance(interfaceClass.getClassLoader(), new Class[]{interfaceClass}, new InvocationHandler() {
             @Override
             public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                long begin = IpcStats.begin();
+                Throwable error = null;
                 long identity = Binder.clearCallingIdentity();
                 try {
                     return method.invoke(base, args);
+                } catch (InvocationTargetException e) {
+                    error = e.getTargetException();
+                    throw e;
                 } finally {
                     Binder.restoreCallingIdentity(identity);
+                    if (begin != 0) {
+                        IpcStats.end("aidl:" + interfaceClass.getSimpleName() + "." + method.getName(), begin, error);
+                    }
                 }
             }
         });
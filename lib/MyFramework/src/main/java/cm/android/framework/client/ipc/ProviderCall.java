@@ -8,10 +8,13 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.DeadObjectException;
+import android.os.ParcelFileDescriptor;
 import android.os.Parcelable;
 import android.os.RemoteException;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 import cm.android.framework.client.core.LogUtil;
 
@@ -44,24 +47,39 @@ public final class ProviderCall {
     }
 
     public static Bundle call(String authority, Context context, String methodName, String arg, Bundle bundle) {
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            Uri uri = Uri.parse("content://" + authority);
-            return context.getContentResolver().call(uri, methodName, arg, bundle);
-        }
-
+        long begin = IpcStats.begin();
+        Throwable error = null;
         try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-                return callUnstable(authority, context, methodName, arg, bundle);
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                Uri uri = Uri.parse("content://" + authority);
+                return context.getContentResolver().call(uri, methodName, arg, bundle);
             }
-        } catch (DeadObjectException e) {
-            LogUtil.getLogger().error(e.getMessage(), e);
-        }
 
-        return callStable(authority, context, methodName, arg, bundle);
+            try {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                    return callUnstable(authority, context, methodName, arg, bundle);
+                }
+            } catch (DeadObjectException e) {
+                error = e;
+                LogUtil.getLogger().error(e.getMessage(), e);
+            }
+
+            Bundle result = callStable(authority, context, methodName, arg, bundle);
+            //provider重启后stable调用成功，不计为失败
+            error = null;
+            return result;
+        } catch (RemoteException e) {
+            error = e;
+            return null;
+        } finally {
+            if (begin != 0) {
+                IpcStats.end("provider:" + authority + "/" + methodName, begin, IpcStats.sizeOf(bundle), error);
+            }
+        }
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
-    private static Bundle callUnstable(String authority, Context context, String methodName, String arg, Bundle bundle) throws DeadObjectException {
+    private static Bundle callUnstable(String authority, Context context, String methodName, String arg, Bundle bundle) throws RemoteException {
         ContentProviderClient unstableClient = context.getContentResolver().acquireUnstableContentProviderClient(authority);
         if (unstableClient == null) {
             return null;
@@ -69,17 +87,13 @@ public final class ProviderCall {
 
         try {
             return unstableClient.call(methodName, arg, bundle);
-        } catch (DeadObjectException e) {
-            throw e;
-        } catch (RemoteException e) {
-            return null;
         } finally {
             closeQuietly(unstableClient);
         }
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
-    private static Bundle callStable(String authority, Context context, String methodName, String arg, Bundle bundle) {
+    private static Bundle callStable(String authority, Context context, String methodName, String arg, Bundle bundle) throws RemoteException {
         ContentProviderClient stableClient = context.getContentResolver().acquireContentProviderClient(authority);
         if (stableClient == null) {
             return null;
@@ -87,8 +101,6 @@ public final class ProviderCall {
 
         try {
             return stableClient.call(methodName, arg, bundle);
-        } catch (RemoteException e) {
-            return null;
         } finally {
             closeQuietly(stableClient);
         }
@@ -104,6 +116,8 @@ public final class ProviderCall {
         private String auth;
         private String arg;
 
+        private List<ParcelFileDescriptor> pipes;
+
         public Builder(Context context, String auth) {
             this.context = context;
             this.auth = auth;
@@ -147,8 +161,40 @@ public final class ProviderCall {
             return this;
         }
 
+        /**
+         * 超过{@link LargePayload#DEFAULT_THRESHOLD}时通过管道传递，接收端使用{@link LargePayload#get}读取
+         */
+        public Builder addLargeArg(String key, byte[] data) {
+            ParcelFileDescriptor pipe = LargePayload.put(bundle, key, data, LargePayload.DEFAULT_THRESHOLD);
+            if (pipe != null) {
+                if (pipes == null) {
+                    pipes = new ArrayList<>();
+                }
+                pipes.add(pipe);
+            }
+            return this;
+        }
+
         public Bundle call() {
-            return ProviderCall.call(auth, context, methodName, arg, bundle);
+            try {
+                return ProviderCall.call(auth, context, methodName, arg, bundle);
+            } finally {
+                closePipes();
+            }
+        }
+
+        private void closePipes() {
+            if (pipes == null) {
+                return;
+            }
+            //对端已持有dup后的fd，本地读端直接关闭
+            for (ParcelFileDescriptor pipe : pipes) {
+                try {
+                    pipe.close();
+                } catch (Exception ignored) {
+                }
+            }
+            pipes = null;
         }
 
     }
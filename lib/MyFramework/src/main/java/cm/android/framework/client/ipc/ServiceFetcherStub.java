@@ -0,0 +1,67 @@
+package cm.android.framework.client.ipc;
+
+import android.os.IBinder;
+import android.os.RemoteException;
+
+import cm.android.framework.interfaces.IServiceFetcher;
+import cm.android.hook.DirectInvocationStub;
+
+/**
+ * {@link IServiceFetcher}的hook，每次getService都会经过，未hook时直接调用base
+ */
+final class ServiceFetcherStub extends DirectInvocationStub<IServiceFetcher> {
+
+    private static final Signature GET_SERVICE = new Signature(0, "getService", String.class);
+    private static final Signature ADD_SERVICE = new Signature(1, "addService", String.class, IBinder.class);
+    private static final Signature REMOVE_SERVICE = new Signature(2, "removeService", String.class);
+    private static final Signature CLEAR_SERVICE = new Signature(3, "clearService");
+
+    ServiceFetcherStub(IServiceFetcher base) {
+        super(base, IServiceFetcher.class, GET_SERVICE, ADD_SERVICE, REMOVE_SERVICE, CLEAR_SERVICE);
+    }
+
+    @Override
+    protected IServiceFetcher createDelegate() {
+        return new IServiceFetcher() {
+            @Override
+            public IBinder getService(String name) throws RemoteException {
+                if (isHooked(GET_SERVICE)) {
+                    return (IBinder) invokeHook(GET_SERVICE, name);
+                }
+                return getBaseInterface().getService(name);
+            }
+
+            @Override
+            public void addService(String name, IBinder service) throws RemoteException {
+                if (isHooked(ADD_SERVICE)) {
+                    invokeHook(ADD_SERVICE, name, service);
+                    return;
+                }
+                getBaseInterface().addService(name, service);
+            }
+
+            @Override
+            public void removeService(String name) throws RemoteException {
+                if (isHooked(REMOVE_SERVICE)) {
+                    invokeHook(REMOVE_SERVICE, name);
+                    return;
+                }
+                getBaseInterface().removeService(name);
+            }
+
+            @Override
+            public void clearService() throws RemoteException {
+                if (isHooked(CLEAR_SERVICE)) {
+                    invokeHook(CLEAR_SERVICE);
+                    return;
+                }
+                getBaseInterface().clearService();
+            }
+
+            @Override
+            public IBinder asBinder() {
+                return getBaseInterface().asBinder();
+            }
+        };
+    }
+}
@@ -2,20 +2,24 @@ package cm.android.framework.client.ipc;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.os.DeadObjectException;
 import android.os.IBinder;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.support.v4.app.BundleCompat;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import cm.android.framework.client.core.Framework;
 import cm.android.framework.client.core.LogUtil;
 import cm.android.framework.interfaces.IServiceFetcher;
 import cm.android.framework.server.ServerProvider;
 import cm.android.framework.server.ServiceFetcherServer;
+import cm.android.hook.MethodProxy;
 
 public final class ServiceManager {
-    private static final HashMap<String, IBinder> sCache = new HashMap<>();
+    private static final Map<String, IBinder> sCache = new ConcurrentHashMap<>();
     private static volatile IServiceFetcher sServiceManager;
 
     private static final IServiceFetcher EMPTY = new IServiceFetcher.Stub() {
@@ -41,36 +45,218 @@ public final class ServiceManager {
         }
     };
 
+    /**
+     * 只允许一个线程重连，其它线程等待其结果
+     */
+    private static final Object sConnectLock = new Object();
+
+    /**
+     * 连接失败后的冷却时间，期间等待的线程不再重复发起provider调用
+     */
+    private static final long RECONNECT_COOLDOWN = 500L;
+
+    private static long sLastConnectFailure;
+
+    /**
+     * 当前连接的hook，重连时复制到新的连接，由sConnectLock保护
+     */
+    private static ServiceFetcherStub sFetcherStub = new ServiceFetcherStub(null);
+
+    private static volatile long sDiedAt;
+
+    private static final RecoveryStats sRecoveryStats = new RecoveryStats();
+
+    /**
+     * 远程调用，配合{@link #call(String, RemoteCall, boolean)}使用
+     */
+    public interface RemoteCall<T> {
+        T call(IBinder service) throws RemoteException;
+    }
+
+    /**
+     * 服务未注册（或server未连接），区别于服务所在进程死亡的{@link DeadObjectException}
+     */
+    public static class ServiceNotFoundException extends RemoteException {
+        public ServiceNotFoundException(String name) {
+            super("service not found:name = " + name);
+        }
+    }
+
     private static IServiceFetcher getIServiceManager() {
-        if (sServiceManager != null) {
-            return sServiceManager;
+        IServiceFetcher fetcher = sServiceManager;
+        if (fetcher != null) {
+            return fetcher;
         }
 
-        //server进程不用跨进程
-        if (Framework.get().isServerProcess()) {
-            sServiceManager = ServiceFetcherServer.get();
+        synchronized (sConnectLock) {
+            if (sServiceManager != null) {
+                return sServiceManager;
+            }
+
+            //server进程不用跨进程
+            if (Framework.get().isServerProcess()) {
+                sServiceManager = hook(ServiceFetcherServer.get());
+                return sServiceManager;
+            }
+
+            long now = SystemClock.elapsedRealtime();
+            if (sLastConnectFailure != 0 && now - sLastConnectFailure < RECONNECT_COOLDOWN) {
+                return EMPTY;
+            }
+
+            fetcher = connect();
+            if (fetcher == null) {
+                sLastConnectFailure = now;
+                return EMPTY;
+            }
+
+            sLastConnectFailure = 0;
+            long diedAt = sDiedAt;
+            if (diedAt != 0) {
+                sDiedAt = 0;
+                long recovery = SystemClock.elapsedRealtime() - diedAt;
+                sRecoveryStats.add(recovery);
+                LogUtil.getLogger().info("ServiceManager:reconnected:recovery = {}ms", recovery);
+            }
+            sServiceManager = hook(fetcher);
             return sServiceManager;
         }
+    }
 
+    /**
+     * 由sConnectLock保护
+     */
+    private static IServiceFetcher hook(IServiceFetcher fetcher) {
+        ServiceFetcherStub stub = new ServiceFetcherStub(fetcher);
+        stub.copyMethodProxies(sFetcherStub);
+        sFetcherStub = stub;
+        return stub.getProxyInterface();
+    }
+
+    /**
+     * hook {@link IServiceFetcher}的方法，例如统计或拦截getService，重连后仍然有效
+     */
+    public static void addMethodProxy(MethodProxy methodProxy) {
+        synchronized (sConnectLock) {
+            sFetcherStub.addMethodProxy(methodProxy);
+        }
+    }
+
+    public static void removeMethodProxy(MethodProxy methodProxy) {
+        synchronized (sConnectLock) {
+            sFetcherStub.removeMethodProxy(methodProxy);
+        }
+    }
+
+    private static IServiceFetcher connect() {
         // Find the service manager
 //        sServiceManager = ServiceManagerNative.asInterface(BinderInternal.getContextObject());
 
         Context context = Framework.get().getBaseContext();
         Bundle response = ServerProvider.Proxy.getServiceFetcher(context);
-        if (response != null) {
-            IBinder binder = BundleCompat.getBinder(response, ServerProvider.KEY_BINDER);
-            LocalProxyUtils.linkBinderDied(binder, new IBinder.DeathRecipient() {
-                @Override
-                public void binderDied() {
-                    //TODO ggg server挂掉会重启，无需kill。但是需要重新清下数据
-                    sServiceManager = null;
-                    sCache.clear();
-                }
-            });
-            sServiceManager = IServiceFetcher.Stub.asInterface(binder);
+        if (response == null) {
+            return null;
         }
 
-        return (sServiceManager == null) ? EMPTY : sServiceManager;
+        final IBinder binder = BundleCompat.getBinder(response, ServerProvider.KEY_BINDER);
+        if (binder == null) {
+            return null;
+        }
+
+        LocalProxyUtils.linkBinderDied(binder, new IBinder.DeathRecipient() {
+            @Override
+            public void binderDied() {
+                //TODO ggg server挂掉会重启，无需kill。但是需要重新清下数据
+                onServerDied(binder);
+            }
+        });
+        return IServiceFetcher.Stub.asInterface(binder);
+    }
+
+    private static void onServerDied(IBinder binder) {
+        synchronized (sConnectLock) {
+            IServiceFetcher fetcher = sServiceManager;
+            if (fetcher != null && fetcher.asBinder() != binder) {
+                //已重连
+                return;
+            }
+            if (sDiedAt == 0) {
+                sDiedAt = SystemClock.elapsedRealtime();
+            }
+            sServiceManager = null;
+            sCache.clear();
+        }
+    }
+
+    /**
+     * 调用name对应的服务。server进程死亡时，idempotent为true的调用在重连后重放一次，否则直接抛出
+     *
+     * @throws ServiceNotFoundException 服务不存在
+     * @throws DeadObjectException      服务所在进程死亡且未重放
+     */
+    public static <T> T call(String name, RemoteCall<T> call, boolean idempotent) throws RemoteException {
+        IBinder service = getService(name);
+        if (service == null) {
+            throw new ServiceNotFoundException(name);
+        }
+
+        try {
+            return call.call(service);
+        } catch (DeadObjectException e) {
+            if (!idempotent) {
+                throw e;
+            }
+
+            LogUtil.getLogger().error("ServiceManager:call:replay:name = {}", name);
+            //死亡通知是异步的，这里主动失效
+            IServiceFetcher fetcher = sServiceManager;
+            if (fetcher != null && !fetcher.asBinder().isBinderAlive()) {
+                onServerDied(fetcher.asBinder());
+            }
+            sCache.remove(name);
+
+            service = getService(name);
+            if (service == null) {
+                throw e;
+            }
+            return call.call(service);
+        }
+    }
+
+    public static long getRecoveryCount() {
+        return sRecoveryStats.count;
+    }
+
+    public static long getLastRecoveryMillis() {
+        return sRecoveryStats.last;
+    }
+
+    public static long getMaxRecoveryMillis() {
+        return sRecoveryStats.max;
+    }
+
+    public static long getAverageRecoveryMillis() {
+        return sRecoveryStats.average();
+    }
+
+    private static final class RecoveryStats {
+        volatile long count;
+        volatile long last;
+        volatile long max;
+        long total;
+
+        synchronized void add(long millis) {
+            count++;
+            last = millis;
+            total += millis;
+            if (millis > max) {
+                max = millis;
+            }
+        }
+
+        synchronized long average() {
+            return count == 0 ? 0 : total / count;
+        }
     }
 
     /**
@@ -82,11 +268,34 @@ public final class ServiceManager {
     public static IBinder getService(String name) {
         try {
             IBinder service = sCache.get(name);
-            if (service != null) {
+            if (service != null && service.isBinderAlive()) {
                 return service;
+            }
+
+            long begin = IpcStats.begin();
+            Throwable error = null;
+            IServiceFetcher fetcher = getIServiceManager();
+            try {
+                service = fetcher.getService(name);
+            } catch (DeadObjectException e) {
+                error = e;
+                onServerDied(fetcher.asBinder());
+                throw e;
+            } catch (RemoteException e) {
+                error = e;
+                throw e;
+            } finally {
+                if (begin != 0) {
+                    IpcStats.end("getService:" + name, begin, error);
+                }
+            }
+
+            if (service != null) {
+                sCache.put(name, service);
             } else {
-                return getIServiceManager().getService(name);
+                sCache.remove(name);
             }
+            return service;
         } catch (RemoteException e) {
             LogUtil.getLogger().error(e.getMessage(), e);
         }
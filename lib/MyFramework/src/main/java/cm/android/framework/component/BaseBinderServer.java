@@ -1,9 +1,13 @@
 package cm.android.framework.component;
 
 import android.content.Context;
+import android.os.IBinder;
 
 import cm.android.framework.client.core.LogUtil;
 import cm.android.framework.client.core.StateHelper;
+import cm.android.framework.server.ServiceFactory;
+import cm.android.framework.server.ServiceFetcherServer;
+import cm.android.framework.server.daemon.ServiceSupervisor;
 
 public abstract class BaseBinderServer implements IBinderServer {
 
@@ -12,7 +16,10 @@ public abstract class BaseBinderServer implements IBinderServer {
     private CoreReceiver coreReceiver = new CoreReceiver() {
         @Override
         public void restore() {
-            startService();
+            //只恢复不健康的服务，supervisor未启动时才整体重启
+            if (!ServiceSupervisor.get().probeNow()) {
+                startService();
+            }
         }
     };
 
@@ -28,6 +35,7 @@ public abstract class BaseBinderServer implements IBinderServer {
             startService();
         } finally {
             coreReceiver.register(this.context);
+            ServiceSupervisor.get().start();
         }
     }
 
@@ -38,6 +46,7 @@ public abstract class BaseBinderServer implements IBinderServer {
             return;
         }
         coreReceiver.unregister(context);
+        ServiceSupervisor.get().stop();
         try {
             stopService();
             destroy();
@@ -51,6 +60,22 @@ public abstract class BaseBinderServer implements IBinderServer {
         return StateHelper.isActive(context);
     }
 
+    /**
+     * 注册按需创建的服务，避免create时构造所有服务
+     */
+    protected final void addService(String name, ServiceFactory factory) {
+        ServiceFetcherServer.get().addServiceFactory(name, factory);
+    }
+
+    /**
+     * 添加服务并交给{@link ServiceSupervisor}检查，不健康时通过restorer恢复
+     */
+    protected final void addService(String name, IBinder service, ServiceSupervisor.Restorer restorer,
+                                    ServiceSupervisor.HealthCheck healthCheck) {
+        ServiceFetcherServer.get().addService(name, service);
+        ServiceSupervisor.get().register(name, restorer, healthCheck);
+    }
+
     protected abstract void create(Context context);
 
     protected abstract void destroy();
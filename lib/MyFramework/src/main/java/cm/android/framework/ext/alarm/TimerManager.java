@@ -12,6 +12,16 @@ public final class TimerManager extends ITimerServer.Stub implements BinderFacto
 
     private static final Logger logger = LoggerFactory.getLogger("timer");
 
+    public static final BinderFactory.Creator<TimerManager> CREATOR = new BinderFactory.Creator<TimerManager>() {
+        @Override
+        public TimerManager create() {
+            return new TimerManager();
+        }
+    };
+
+    /**
+     * bind时生成一次，避免每次调用都创建Proxy
+     */
     private ITimerServer timerServer;
 
     @Override
@@ -21,8 +31,7 @@ public final class TimerManager extends ITimerServer.Stub implements BinderFacto
             return;
         }
         try {
-            ITimerServer server = LocalProxyUtils.genProxy(ITimerServer.class, timerServer);
-            server.register(action, period, delay);
+            timerServer.register(action, period, delay);
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
         }
@@ -35,8 +44,7 @@ public final class TimerManager extends ITimerServer.Stub implements BinderFacto
             return;
         }
         try {
-            ITimerServer server = LocalProxyUtils.genProxy(ITimerServer.class, timerServer);
-            server.unregister(action);
+            timerServer.unregister(action);
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
         }
@@ -44,7 +52,11 @@ public final class TimerManager extends ITimerServer.Stub implements BinderFacto
 
     @Override
     public synchronized void bind(IBinder binder) {
-        timerServer = ITimerServer.Stub.asInterface(binder);
+        if (binder == null) {
+            timerServer = null;
+            return;
+        }
+        timerServer = LocalProxyUtils.genProxy(ITimerServer.class, ITimerServer.Stub.asInterface(binder));
     }
 
     @Override
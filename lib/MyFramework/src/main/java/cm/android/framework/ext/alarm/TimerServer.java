@@ -1,13 +1,35 @@
 package cm.android.framework.ext.alarm;
 
 import android.content.Context;
+import android.os.Bundle;
 import android.os.RemoteException;
 
+import cm.android.framework.client.ipc.BatchChannel;
+import cm.android.framework.server.BatchReceiver;
+
 public final class TimerServer extends ITimerServer.Stub {
 
+    private static final String M_register = "register";
+    private static final String M_unregister = "unregister";
+
+    private static final String KEY_ACTION = "action";
+    private static final String KEY_PERIOD = "period";
+    private static final String KEY_DELAY = "delay";
+
     private cm.android.sdk.alarm.TimerTaskManager timerTaskManager
             = new cm.android.sdk.alarm.TimerTaskManager();
 
+    private final BatchReceiver batchReceiver = new BatchReceiver() {
+        @Override
+        protected void onCall(String method, Bundle args) {
+            if (M_register.equals(method)) {
+                timerTaskManager.register(args.getString(KEY_ACTION), args.getLong(KEY_PERIOD), args.getLong(KEY_DELAY));
+            } else if (M_unregister.equals(method)) {
+                timerTaskManager.unregister(args.getString(KEY_ACTION));
+            }
+        }
+    };
+
     public TimerServer() {
     }
 
@@ -28,4 +50,26 @@ public final class TimerServer extends ITimerServer.Stub {
     public void unregister(String action) throws RemoteException {
         timerTaskManager.unregister(action);
     }
+
+    /**
+     * 批量接收register/unregister，需以单独的name addService，
+     * client端通过{@link #register(BatchChannel, String, long, long)}发送
+     */
+    public BatchReceiver getBatchReceiver() {
+        return batchReceiver;
+    }
+
+    public static void register(BatchChannel channel, String action, long period, long delay) {
+        Bundle args = new Bundle();
+        args.putString(KEY_ACTION, action);
+        args.putLong(KEY_PERIOD, period);
+        args.putLong(KEY_DELAY, delay);
+        channel.post(M_register, args);
+    }
+
+    public static void unregister(BatchChannel channel, String action) {
+        Bundle args = new Bundle();
+        args.putString(KEY_ACTION, action);
+        channel.post(M_unregister, args);
+    }
 }
@@ -0,0 +1,35 @@
+package cm.android.framework.server;
+
+import android.os.Bundle;
+
+import java.util.List;
+
+import cm.android.framework.client.core.LogUtil;
+import cm.android.framework.client.ipc.BatchChannel;
+import cm.android.framework.interfaces.IBatchTransaction;
+
+/**
+ * {@link BatchChannel}的server端，按发送顺序逐个执行调用
+ */
+public abstract class BatchReceiver extends IBatchTransaction.Stub {
+
+    @Override
+    public void transact(List<Bundle> calls) {
+        if (calls == null) {
+            return;
+        }
+
+        ClassLoader classLoader = getClass().getClassLoader();
+        for (Bundle call : calls) {
+            call.setClassLoader(classLoader);
+            String method = call.getString(BatchChannel.KEY_METHOD);
+            try {
+                onCall(method, call);
+            } catch (RuntimeException e) {
+                LogUtil.getLogger().error("BatchReceiver:method = " + method, e);
+            }
+        }
+    }
+
+    protected abstract void onCall(String method, Bundle args);
+}
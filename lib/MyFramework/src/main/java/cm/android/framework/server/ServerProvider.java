@@ -7,12 +7,17 @@ import android.os.IBinder;
 import android.os.RemoteException;
 import android.support.v4.app.BundleCompat;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 import cm.android.framework.client.core.Framework;
 import cm.android.framework.client.core.LogUtil;
+import cm.android.framework.client.ipc.IpcStats;
 import cm.android.framework.client.ipc.ProviderCall;
 import cm.android.framework.component.BaseContentProvider;
 import cm.android.framework.interfaces.IServiceFetcher;
 import cm.android.framework.server.daemon.DaemonService;
+import cm.android.framework.server.daemon.ServiceSupervisor;
 
 public final class ServerProvider extends BaseContentProvider {
     public static final String M_create = "@create";
@@ -21,11 +26,14 @@ public final class ServerProvider extends BaseContentProvider {
     public static final String M_getServiceFetcher = "@getServiceFetcher";
     public static final String M_getBundle = "@getBundle";
     public static final String M_putBundle = "@putBundle";
+    public static final String M_dumpIpcStats = "@dumpIpcStats";
 
     public static String AUTHORITIES = "framework.provider";
 
     public static final String KEY_BINDER = "_framework_|_binder_";
 
+    public static final String KEY_IPC_STATS = "_framework_|_ipc_stats_";
+
     private final ServiceFetcher mServiceFetcher = new ServiceFetcher();
     private final BinderServerAgent binderServer = new BinderServerAgent();
 
@@ -84,9 +92,24 @@ public final class ServerProvider extends BaseContentProvider {
                 binderServer.putBundle(arg, extras);
             }
         }
+
+        if (M_dumpIpcStats.equals(method)) {
+            Bundle bundle = new Bundle();
+            bundle.putString(KEY_IPC_STATS, IpcStats.dump());
+            return bundle;
+        }
         return null;
     }
 
+    /**
+     * adb shell dumpsys activity provider ServerProvider
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        IpcStats.dump(writer);
+        ServiceSupervisor.get().dump(writer);
+    }
+
     private static class ServiceFetcher extends IServiceFetcher.Stub {
         @Override
         public IBinder getService(String name) throws RemoteException {
@@ -156,5 +179,9 @@ public final class ServerProvider extends BaseContentProvider {
         public static Bundle putBundle(Context context, String key, Bundle bundle) {
             return invokeMethod(context, ServerProvider.M_putBundle, key, bundle);
         }
+
+        public static Bundle dumpIpcStats(Context context) {
+            return invokeMethod(context, ServerProvider.M_dumpIpcStats);
+        }
     }
 }
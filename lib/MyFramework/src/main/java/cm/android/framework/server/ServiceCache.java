@@ -1,28 +1,274 @@
 package cm.android.framework.server;
 
+import android.os.Binder;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Parcel;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import cm.android.framework.client.core.LogUtil;
+
 public class ServiceCache {
 
     private static final Map<String, IBinder> sCache = new HashMap<String, IBinder>(5);
 
-    public static void addService(String name, IBinder service) {
+    private static final Map<String, LazyService> sLazyCache = new HashMap<String, LazyService>(5);
+
+    /**
+     * 按需创建的服务空闲超时时间，<=0表示不回收
+     */
+    private static long sIdleTimeout = 0;
+
+    private static Handler sHandler;
+
+    private static final Runnable sTrimRunnable = new Runnable() {
+        @Override
+        public void run() {
+            trimIdle();
+        }
+    };
+
+    public static synchronized void addService(String name, IBinder service) {
         sCache.put(name, service);
     }
 
+    public static void addServiceFactory(String name, ServiceFactory factory) {
+        LazyService old;
+        synchronized (ServiceCache.class) {
+            old = sLazyCache.put(name, new LazyService(name, factory));
+        }
+        if (old != null) {
+            old.release();
+        }
+    }
+
     public static IBinder removeService(String name) {
-        return sCache.remove(name);
+        LazyService lazy;
+        IBinder service;
+        synchronized (ServiceCache.class) {
+            lazy = sLazyCache.remove(name);
+            service = sCache.remove(name);
+        }
+        if (lazy != null) {
+            IBinder instance = lazy.release();
+            return service != null ? service : instance;
+        }
+        return service;
     }
 
     public static void clearService() {
-        sCache.clear();
+        List<LazyService> lazies;
+        synchronized (ServiceCache.class) {
+            sCache.clear();
+            lazies = new ArrayList<LazyService>(sLazyCache.values());
+            sLazyCache.clear();
+        }
+        for (LazyService lazy : lazies) {
+            lazy.release();
+        }
     }
 
     public static IBinder getService(String name) {
-        return sCache.get(name);
+        LazyService lazy;
+        synchronized (ServiceCache.class) {
+            IBinder service = sCache.get(name);
+            if (service != null) {
+                return service;
+            }
+            lazy = sLazyCache.get(name);
+        }
+        //创建过程不占用全局锁
+        return lazy == null ? null : lazy.get();
+    }
+
+    /**
+     * 是否为按需创建的服务，这类服务的创建和回收由ServiceCache负责
+     */
+    public static synchronized boolean hasServiceFactory(String name) {
+        return sLazyCache.containsKey(name);
+    }
+
+    /**
+     * 不会触发按需创建
+     */
+    public static IBinder peekService(String name) {
+        synchronized (ServiceCache.class) {
+            IBinder service = sCache.get(name);
+            if (service != null) {
+                return service;
+            }
+            LazyService lazy = sLazyCache.get(name);
+            return lazy == null ? null : lazy.instance;
+        }
+    }
+
+    public static synchronized void setIdleTimeout(long idleTimeout) {
+        sIdleTimeout = idleTimeout;
+        if (idleTimeout <= 0) {
+            if (sHandler != null) {
+                sHandler.removeCallbacks(sTrimRunnable);
+            }
+            return;
+        }
+
+        if (sHandler == null) {
+            HandlerThread thread = new HandlerThread("framework:service-trim", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            sHandler = new Handler(thread.getLooper());
+        }
+        sHandler.removeCallbacks(sTrimRunnable);
+        sHandler.postDelayed(sTrimRunnable, idleTimeout);
+    }
+
+    private static void trimIdle() {
+        long timeout;
+        List<LazyService> lazies;
+        synchronized (ServiceCache.class) {
+            timeout = sIdleTimeout;
+            if (timeout <= 0) {
+                return;
+            }
+            lazies = new ArrayList<LazyService>(sLazyCache.values());
+        }
+
+        for (LazyService lazy : lazies) {
+            lazy.releaseIfIdle(timeout);
+        }
+
+        synchronized (ServiceCache.class) {
+            if (sHandler != null && sIdleTimeout > 0) {
+                sHandler.postDelayed(sTrimRunnable, Math.max(sIdleTimeout / 2, 1000L));
+            }
+        }
     }
 
+    /**
+     * 按需创建的服务，对外只暴露{@link Handle}：
+     * <p>
+     * - client会缓存getService的结果，实例被回收重建后Handle仍然有效，不会调用到已销毁的实例
+     * - 每次调用都经过Handle，正在调用的实例不会被回收，空闲时间按最后一次调用计算
+     * - 服务被移除后调用Handle抛出IllegalStateException
+     */
+    private static final class LazyService {
+        private final String name;
+        private final ServiceFactory factory;
+        private final Handle handle = new Handle();
+        private volatile IBinder instance;
+        private volatile long lastAccess;
+        /**
+         * 正在执行的调用数，由this保护
+         */
+        private int calls;
+        private boolean closed;
+
+        LazyService(String name, ServiceFactory factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+
+        /**
+         * 创建实例并返回Handle，创建失败时返回null
+         */
+        IBinder get() {
+            lastAccess = SystemClock.elapsedRealtime();
+            if (instance != null) {
+                return handle;
+            }
+
+            synchronized (this) {
+                if (closed) {
+                    return null;
+                }
+                return create() == null ? null : handle;
+            }
+        }
+
+        /**
+         * 由this保护
+         */
+        private IBinder create() {
+            if (instance == null) {
+                long begin = SystemClock.elapsedRealtime();
+                instance = factory.create(name);
+                LogUtil.getLogger().info("ServiceCache:create:name = {},cost = {}ms",
+                        name, SystemClock.elapsedRealtime() - begin);
+            }
+            return instance;
+        }
+
+        synchronized IBinder acquire() {
+            if (closed) {
+                throw new IllegalStateException("service removed:name = " + name);
+            }
+            IBinder service = create();
+            if (service != null) {
+                calls++;
+                lastAccess = SystemClock.elapsedRealtime();
+            }
+            return service;
+        }
+
+        synchronized void releaseCall() {
+            calls--;
+            lastAccess = SystemClock.elapsedRealtime();
+        }
+
+        synchronized IBinder release() {
+            closed = true;
+            return destroy();
+        }
+
+        /**
+         * 由this保护
+         */
+        private IBinder destroy() {
+            IBinder service = instance;
+            if (service != null) {
+                instance = null;
+                factory.destroy(name, service);
+            }
+            return service;
+        }
+
+        synchronized void releaseIfIdle(long timeout) {
+            //在锁内用当前时间重新检查，刚被get()访问或正在调用的实例不回收
+            if (instance != null && calls == 0 && SystemClock.elapsedRealtime() - lastAccess > timeout) {
+                LogUtil.getLogger().info("ServiceCache:idle:name = {}", name);
+                destroy();
+            }
+        }
+
+        private final class Handle extends Binder {
+            @Override
+            public String getInterfaceDescriptor() {
+                IBinder service = instance;
+                try {
+                    return service == null ? null : service.getInterfaceDescriptor();
+                } catch (RemoteException e) {
+                    return null;
+                }
+            }
+
+            @Override
+            protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+                IBinder service = acquire();
+                if (service == null) {
+                    return false;
+                }
+                try {
+                    return service.transact(code, data, reply, flags);
+                } finally {
+                    releaseCall();
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,18 @@
+package cm.android.framework.server;
+
+import android.os.IBinder;
+
+/**
+ * 按需创建服务，第一次getService时调用{@link #create(String)}
+ * <p>
+ * getService返回的是转发调用的binder而不是create的实例，本进程内asInterface也会走transact
+ */
+public interface ServiceFactory {
+
+    IBinder create(String name);
+
+    /**
+     * 空闲超时或clearService时调用，释放服务占用的资源
+     */
+    void destroy(String name, IBinder service);
+}
@@ -3,6 +3,7 @@ package cm.android.framework.server;
 import android.os.IBinder;
 
 import cm.android.framework.interfaces.IServiceFetcher;
+import cm.android.framework.server.daemon.ServiceSupervisor;
 import cm.java.util.Singleton;
 
 public class ServiceFetcherServer extends IServiceFetcher.Stub {
@@ -22,9 +23,35 @@ public class ServiceFetcherServer extends IServiceFetcher.Stub {
 
     @Override
     public IBinder getService(String name) {
+        ServiceSupervisor.get().onDemand(name);
         return ServiceCache.getService(name);
     }
 
+    /**
+     * 不触发按需恢复
+     */
+    public IBinder peekService(String name) {
+        return ServiceCache.peekService(name);
+    }
+
+    public boolean hasServiceFactory(String name) {
+        return ServiceCache.hasServiceFactory(name);
+    }
+
+    /**
+     * 注册按需创建的服务，第一次getService时才创建
+     */
+    public void addServiceFactory(String name, ServiceFactory factory) {
+        ServiceCache.addServiceFactory(name, factory);
+    }
+
+    /**
+     * 按需创建的服务空闲超过idleTimeout后回收，<=0表示不回收
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        ServiceCache.setIdleTimeout(idleTimeout);
+    }
+
     @Override
     public void addService(String name, IBinder service) {
         ServiceCache.addService(name, service);
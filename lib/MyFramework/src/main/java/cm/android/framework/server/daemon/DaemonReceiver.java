@@ -11,6 +11,7 @@ public class DaemonReceiver extends BaseBroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
         DaemonManager.getInstance().schedule(context);
+        ServiceSupervisor.get().probeNow();
 
 //        DaemonService.start(context);
     }
@@ -0,0 +1,311 @@
+package cm.android.framework.server.daemon;
+
+import android.os.Binder;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import cm.android.framework.client.core.LogUtil;
+import cm.android.framework.server.ServiceFetcherServer;
+import cm.java.util.Singleton;
+
+/**
+ * server进程服务的健康检查：
+ * <p>
+ * - 定期检查服务是否健康，连续健康时探测间隔逐步加大，有需要重启的服务时恢复为最小间隔；
+ * 等待按需恢复和重启预算已用完的服务不影响探测间隔
+ * - 本进程的Binder上pingBinder总是成功，只检查是否还在缓存中，或由{@link HealthCheck}判断；
+ * 其他进程的binder检查isBinderAlive和pingBinder
+ * - 重启有预算限制，窗口内超过次数后不再重启，两次重启之间指数退避
+ * - 按需创建的服务由{@link cm.android.framework.server.ServiceCache}负责创建和回收，不检查也不重启
+ * - 最近未被访问的服务不立即重启，在下次{@link #onDemand(String)}时再恢复
+ */
+public final class ServiceSupervisor {
+
+    /**
+     * 重建服务，返回新的binder，失败返回null
+     */
+    public interface Restorer {
+        IBinder restore(String name);
+    }
+
+    /**
+     * 服务自身的健康检查，在supervisor线程调用
+     */
+    public interface HealthCheck {
+        boolean isHealthy(String name, IBinder binder);
+    }
+
+    private static final long MIN_PROBE_INTERVAL = 5 * 1000L;
+    private static final long MAX_PROBE_INTERVAL = 5 * 60 * 1000L;
+
+    private static final long MIN_BACKOFF = 1000L;
+    private static final long MAX_BACKOFF = 60 * 1000L;
+
+    private static final int RESTART_BUDGET = 5;
+    private static final long BUDGET_WINDOW = 10 * 60 * 1000L;
+
+    /**
+     * 超过该时间未被访问视为空闲
+     */
+    private static final long IDLE_TIME = 60 * 1000L;
+
+    /**
+     * onDemand在每次getService时调用，不使用全局锁
+     */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile Handler handler;
+
+    private long probeInterval = MIN_PROBE_INTERVAL;
+
+    private final Runnable probeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            probe();
+        }
+    };
+
+    private ServiceSupervisor() {
+    }
+
+    private static final Singleton<ServiceSupervisor> singleton = new Singleton<ServiceSupervisor>() {
+        @Override
+        protected ServiceSupervisor create() {
+            return new ServiceSupervisor();
+        }
+    };
+
+    public static ServiceSupervisor get() {
+        return singleton.get();
+    }
+
+    public synchronized void start() {
+        if (handler != null) {
+            return;
+        }
+        HandlerThread thread = new HandlerThread("framework:supervisor", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        probeInterval = MIN_PROBE_INTERVAL;
+        handler.postDelayed(probeRunnable, probeInterval);
+    }
+
+    public synchronized void stop() {
+        if (handler == null) {
+            return;
+        }
+        handler.removeCallbacksAndMessages(null);
+        handler.getLooper().quit();
+        handler = null;
+    }
+
+    public void register(String name, Restorer restorer) {
+        register(name, restorer, null);
+    }
+
+    /**
+     * @param healthCheck 为null时本进程的服务只要还在缓存中就视为健康
+     */
+    public void register(String name, Restorer restorer, HealthCheck healthCheck) {
+        entries.put(name, new Entry(name, restorer, healthCheck));
+    }
+
+    public void unregister(String name) {
+        entries.remove(name);
+    }
+
+    /**
+     * 立即探测一次，例如收到守护广播时
+     *
+     * @return supervisor未启动时返回false
+     */
+    public synchronized boolean probeNow() {
+        if (handler == null) {
+            return false;
+        }
+        handler.removeCallbacks(probeRunnable);
+        handler.post(probeRunnable);
+        return true;
+    }
+
+    /**
+     * 服务被访问时调用，等待恢复的服务在此时重建
+     */
+    public void onDemand(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return;
+        }
+        entry.lastAccess = SystemClock.elapsedRealtime();
+        if (!entry.pendingRestore || handler == null) {
+            return;
+        }
+        restart(entry, true);
+    }
+
+    private void probe() {
+        boolean healthy = true;
+        long now = SystemClock.elapsedRealtime();
+        for (Entry entry : entries.values()) {
+            if (isHealthy(entry)) {
+                continue;
+            }
+
+            synchronized (entry) {
+                if (entry.failedAt == 0) {
+                    entry.failedAt = now;
+                    LogUtil.getLogger().error("ServiceSupervisor:unhealthy:name = {}", entry.name);
+                }
+                if (now - entry.lastAccess > IDLE_TIME) {
+                    entry.pendingRestore = true;
+                    continue;
+                }
+                if (isExhausted(entry, now)) {
+                    continue;
+                }
+            }
+            healthy = false;
+            restart(entry, false);
+        }
+
+        synchronized (this) {
+            probeInterval = healthy ? Math.min(probeInterval * 2, MAX_PROBE_INTERVAL) : MIN_PROBE_INTERVAL;
+            if (handler != null) {
+                handler.removeCallbacks(probeRunnable);
+                handler.postDelayed(probeRunnable, probeInterval);
+            }
+        }
+    }
+
+    private static boolean isHealthy(Entry entry) {
+        if (ServiceFetcherServer.get().hasServiceFactory(entry.name)) {
+            return true;
+        }
+        IBinder binder = ServiceFetcherServer.get().peekService(entry.name);
+        if (binder == null) {
+            return false;
+        }
+        try {
+            if (!(binder instanceof Binder)) {
+                return binder.isBinderAlive() && binder.pingBinder();
+            }
+            return entry.healthCheck == null || entry.healthCheck.isHealthy(entry.name, binder);
+        } catch (RuntimeException e) {
+            LogUtil.getLogger().error("ServiceSupervisor:healthCheck:name = " + entry.name, e);
+            return false;
+        }
+    }
+
+    private void restart(Entry entry, boolean onDemand) {
+        if (ServiceFetcherServer.get().hasServiceFactory(entry.name)) {
+            //回收后未重建的服务不能addService成普通服务
+            entry.pendingRestore = false;
+            return;
+        }
+        synchronized (entry) {
+            long now = SystemClock.elapsedRealtime();
+            if (now < entry.nextRestart) {
+                return;
+            }
+
+            if (isExhausted(entry, now)) {
+                return;
+            }
+            entry.restartsInWindow++;
+
+            IBinder binder = null;
+            try {
+                binder = entry.restorer.restore(entry.name);
+            } catch (RuntimeException e) {
+                LogUtil.getLogger().error("ServiceSupervisor:restore:name = " + entry.name, e);
+            }
+
+            now = SystemClock.elapsedRealtime();
+            if (binder == null) {
+                entry.backoff = entry.backoff == 0 ? MIN_BACKOFF : Math.min(entry.backoff * 2, MAX_BACKOFF);
+                entry.nextRestart = now + entry.backoff;
+                return;
+            }
+
+            ServiceFetcherServer.get().addService(entry.name, binder);
+            long recovery = entry.failedAt == 0 ? 0 : now - entry.failedAt;
+            entry.lastRecovery = recovery;
+            entry.maxRecovery = Math.max(entry.maxRecovery, recovery);
+            entry.restarts++;
+            entry.failedAt = 0;
+            entry.pendingRestore = false;
+            entry.backoff = 0;
+            entry.nextRestart = 0;
+            LogUtil.getLogger().info("ServiceSupervisor:restored:name = {},onDemand = {},recovery = {}ms",
+                    entry.name, onDemand, recovery);
+        }
+    }
+
+    /**
+     * 窗口内的重启次数是否已用完，每个窗口只记录一次日志，调用方持有entry的锁
+     */
+    private static boolean isExhausted(Entry entry, long now) {
+        if (now - entry.windowStart > BUDGET_WINDOW) {
+            entry.windowStart = now;
+            entry.restartsInWindow = 0;
+            entry.exhaustedLogged = false;
+            return false;
+        }
+        if (entry.restartsInWindow < RESTART_BUDGET) {
+            return false;
+        }
+        if (!entry.exhaustedLogged) {
+            entry.exhaustedLogged = true;
+            LogUtil.getLogger().error("ServiceSupervisor:budget exhausted:name = {}", entry.name);
+        }
+        return true;
+    }
+
+    public void dump(PrintWriter pw) {
+        synchronized (this) {
+            pw.println("ServiceSupervisor: probeInterval = " + probeInterval + "ms");
+        }
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                pw.println("  " + entry.name
+                        + ": restarts = " + entry.restarts
+                        + ", pending = " + entry.pendingRestore
+                        + ", lastRecovery = " + entry.lastRecovery + "ms"
+                        + ", maxRecovery = " + entry.maxRecovery + "ms");
+            }
+        }
+    }
+
+    private static final class Entry {
+        final String name;
+        final Restorer restorer;
+        final HealthCheck healthCheck;
+
+        volatile long lastAccess = SystemClock.elapsedRealtime();
+        long failedAt;
+        volatile boolean pendingRestore;
+
+        long windowStart;
+        int restartsInWindow;
+        boolean exhaustedLogged;
+        long backoff;
+        long nextRestart;
+
+        long restarts;
+        long lastRecovery;
+        long maxRecovery;
+
+        Entry(String name, Restorer restorer, HealthCheck healthCheck) {
+            this.name = name;
+            this.restorer = restorer;
+            this.healthCheck = healthCheck;
+        }
+    }
+}
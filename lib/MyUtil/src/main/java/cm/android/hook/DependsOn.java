@@ -0,0 +1,15 @@
+package cm.android.hook;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 声明{@link IInjector}的依赖，{@link InjectorManager}保证依赖先于自身安装
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DependsOn {
+    Class<? extends IInjector>[] value();
+}
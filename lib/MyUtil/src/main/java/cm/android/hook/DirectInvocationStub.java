@@ -0,0 +1,146 @@
+package cm.android.hook;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+/**
+ * 不经过{@link java.lang.reflect.Proxy}的hook，适用于调用频繁的接口
+ * <p>
+ * 子类手写接口的实现，每个方法对应一个{@link Signature}：
+ * <pre>
+ * private static final Signature ADD = new Signature(0, "add", int.class, int.class);
+ *
+ * public int add(int a, int b) {
+ *     if (isHooked(ADD)) {
+ *         return (Integer) invokeHook(ADD, a, b);
+ *     }
+ *     return getBaseInterface().add(a, b);
+ * }
+ * </pre>
+ * 未hook的方法直接虚调用，没有参数装箱和反射；hook后的方法与{@link MethodInvocationStub}一致地回调{@link MethodProxy}
+ * <p>
+ * 只适用于编译期可见、各版本一致的接口（如本框架的IServiceFetcher）；系统服务的hidden接口
+ * （{@link BinderInvocationStub}）各API版本方法不同，无法手写实现，仍使用Proxy
+ */
+public abstract class DirectInvocationStub<T> extends MethodInvocationStub<T> {
+
+    /**
+     * 方法签名，index为在{@link #DirectInvocationStub(Object, Class, Signature...)}中的位置
+     */
+    public static final class Signature {
+        final int index;
+        final String name;
+        final Class<?>[] parameterTypes;
+
+        public Signature(int index, String name, Class<?>... parameterTypes) {
+            this.index = index;
+            this.name = name;
+            this.parameterTypes = parameterTypes;
+        }
+    }
+
+    private final Class<T> mInterface;
+    private final Signature[] mSignatures;
+    private final Method[] mMethods;
+
+    /**
+     * 按Signature.index存放生效的hook
+     */
+    private volatile MethodProxy[] mSlots;
+
+    private T mDelegate;
+
+    protected DirectInvocationStub(T baseInterface, Class<T> interfaceClass, Signature... signatures) {
+        super(baseInterface, false);
+        for (int i = 0; i < signatures.length; i++) {
+            if (signatures[i].index != i) {
+                throw new IllegalArgumentException("Signature index mismatch: " + signatures[i].name);
+            }
+        }
+        this.mInterface = interfaceClass;
+        this.mSignatures = signatures;
+        this.mMethods = new Method[signatures.length];
+        this.mSlots = new MethodProxy[signatures.length];
+    }
+
+    /**
+     * 接口的手写实现，只调用一次
+     */
+    protected abstract T createDelegate();
+
+    @Override
+    public synchronized T getProxyInterface() {
+        if (getBaseInterface() == null) {
+            return null;
+        }
+        if (mDelegate == null) {
+            mDelegate = createDelegate();
+        }
+        return mDelegate;
+    }
+
+    @Override
+    protected void onMethodProxiesChanged(Map<String, MethodProxy> proxies) {
+        MethodProxy[] slots = new MethodProxy[mSignatures.length];
+        for (Signature signature : mSignatures) {
+            MethodProxy methodProxy = proxies.get(MethodProxy.keyOf(signature.name, signature.parameterTypes));
+            if (methodProxy == null) {
+                methodProxy = proxies.get(signature.name);
+            }
+            slots[signature.index] = methodProxy;
+        }
+        mSlots = slots;
+    }
+
+    protected final boolean isHooked(Signature signature) {
+        MethodProxy methodProxy = mSlots[signature.index];
+        return methodProxy != null && methodProxy.isEnable();
+    }
+
+    /**
+     * 走hook流程，checked异常原样抛出
+     */
+    protected final Object invokeHook(Signature signature, Object... args) {
+        Method method = getMethod(signature);
+        MethodProxy methodProxy = mSlots[signature.index];
+        T base = getBaseInterface();
+        try {
+            if (methodProxy != null && methodProxy.isEnable()) {
+                if (methodProxy.beforeCall(base, method, args)) {
+                    Object res = methodProxy.call(base, method, args);
+                    return methodProxy.afterCall(base, method, args, res);
+                }
+            }
+            return method.invoke(base, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getTargetException();
+            throw DirectInvocationStub.<RuntimeException>sneakyThrow(cause != null ? cause : e);
+        } catch (Throwable e) {
+            throw DirectInvocationStub.<RuntimeException>sneakyThrow(e);
+        }
+    }
+
+    /**
+     * mMethods不加锁也不是volatile：并发时可能各自查找一次，得到等价的Method，
+     * Method本身在发布前已初始化完成，多查找一次无害
+     */
+    private Method getMethod(Signature signature) {
+        Method method = mMethods[signature.index];
+        if (method == null) {
+            try {
+                method = mInterface.getMethod(signature.name, signature.parameterTypes);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("No such method: " + signature.name, e);
+            }
+            method.setAccessible(true);
+            mMethods[signature.index] = method;
+        }
+        return method;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> E sneakyThrow(Throwable e) throws E {
+        throw (E) e;
+    }
+}
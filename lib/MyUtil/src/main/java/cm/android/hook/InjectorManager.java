@@ -0,0 +1,406 @@
+package cm.android.hook;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cm.android.thread.PriorityThreadFactory;
+
+/**
+ * 统一安装{@link IInjector}：
+ * <p>
+ * - 通过{@link #discover(Class)}扫描内部类发现injector，扫描结果只计算一次；{@link DependsOn}中未添加的依赖自动创建
+ * - 按{@link DependsOn}建立依赖关系，依赖全部安装成功后才安装自身，依赖失败则跳过
+ * - 标记了{@link Parallel}的injector在线程池中并行安装，其余的在调用线程按依赖顺序串行安装，
+ * {@link #injectAll()}阻塞到全部结束；等待期间不持有manager的锁，injector中可以回调{@link #getState(Class)}等方法
+ * - 记录每个injector的耗时，见{@link #dump(PrintWriter)}
+ */
+public class InjectorManager {
+
+    private static Logger logger = LoggerFactory.getLogger("InjectorManager");
+
+    public enum State {
+        PENDING, SUCCESS, FAILED, SKIPPED
+    }
+
+    /**
+     * 容器类 -> 可实例化的injector构造函数；构造函数引用容器类，value使用软引用
+     */
+    private static final Map<Class<?>, SoftReference<Constructor<?>[]>> sDiscoverCache =
+            Collections.synchronizedMap(new WeakHashMap<Class<?>, SoftReference<Constructor<?>[]>>());
+
+    private static final Node DONE = new Node(null);
+
+    private final Map<Class<? extends IInjector>, Node> mNodes = new LinkedHashMap<>();
+
+    private int mParallelism = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+
+    private long mTotalCost;
+
+    /**
+     * 串行化{@link #injectAll()}，与manager自身的锁分开
+     */
+    private final Object mInjectLock = new Object();
+
+    public synchronized void addInjector(IInjector injector) {
+        mNodes.put(injector.getClass(), new Node(injector));
+    }
+
+    /**
+     * 添加container中声明的所有injector（非抽象、未标记{@link SkipInject}、有无参构造函数）
+     */
+    public synchronized void discover(Class<?> container) {
+        for (Constructor<?> constructor : scan(container)) {
+            Class<?> clazz = constructor.getDeclaringClass();
+            if (!mNodes.containsKey(clazz)) {
+                addInjector(newInstance(constructor));
+            }
+        }
+    }
+
+    private static Constructor<?>[] scan(Class<?> container) {
+        SoftReference<Constructor<?>[]> ref = sDiscoverCache.get(container);
+        Constructor<?>[] constructors = ref == null ? null : ref.get();
+        if (constructors != null) {
+            return constructors;
+        }
+
+        List<Constructor<?>> list = new ArrayList<>();
+        for (Class<?> innerClass : container.getDeclaredClasses()) {
+            if (Modifier.isAbstract(innerClass.getModifiers())
+                    || !IInjector.class.isAssignableFrom(innerClass)
+                    || innerClass.getAnnotation(SkipInject.class) != null) {
+                continue;
+            }
+            Constructor<?> constructor = noArgConstructor(innerClass);
+            if (constructor == null) {
+                logger.warn("no default constructor:{}", innerClass.getName());
+                continue;
+            }
+            list.add(constructor);
+        }
+        constructors = list.toArray(new Constructor<?>[list.size()]);
+        sDiscoverCache.put(container, new SoftReference<>(constructors));
+        return constructors;
+    }
+
+    private static Constructor<?> noArgConstructor(Class<?> clazz) {
+        try {
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            if (!constructor.isAccessible()) {
+                constructor.setAccessible(true);
+            }
+            return constructor;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static IInjector newInstance(Constructor<?> constructor) {
+        try {
+            return (IInjector) constructor.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to instance injector : " + constructor.getDeclaringClass(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized <T extends IInjector> T findInjector(Class<T> clazz) {
+        Node node = mNodes.get(clazz);
+        return node == null ? null : (T) node.injector;
+    }
+
+    /**
+     * 并行安装的线程数，1时全部在调用线程内按依赖顺序串行安装
+     */
+    public synchronized void setParallelism(int parallelism) {
+        mParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * 安装所有injector，已安装成功的不会重复安装
+     */
+    public void injectAll() throws InterruptedException {
+        synchronized (mInjectLock) {
+            List<Node> pending;
+            List<Node> roots = new ArrayList<>();
+            int parallelism;
+            synchronized (this) {
+                pending = prepare(roots);
+                parallelism = mParallelism;
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            long cost = run(pending, roots, parallelism);
+            synchronized (this) {
+                mTotalCost = cost;
+            }
+            logger.info("injectAll:count = {},cost = {}ms", pending.size(), cost);
+        }
+    }
+
+    /**
+     * 在锁内建立依赖图，返回待安装的节点，无依赖的节点放入roots
+     */
+    private List<Node> prepare(List<Node> roots) {
+        addMissingDependencies();
+
+        List<Node> pending = new ArrayList<>();
+        for (Node node : mNodes.values()) {
+            node.dependents.clear();
+            if (node.state != State.SUCCESS) {
+                node.state = State.PENDING;
+                node.cost = 0;
+                pending.add(node);
+            }
+        }
+        if (pending.isEmpty()) {
+            return pending;
+        }
+
+        for (Node node : pending) {
+            node.unfinished = new AtomicInteger(0);
+            node.dependencyFailed = false;
+        }
+        for (Node node : pending) {
+            for (Node dependency : dependencies(node)) {
+                if (dependency.state == State.PENDING) {
+                    dependency.dependents.add(node);
+                    node.unfinished.incrementAndGet();
+                }
+            }
+        }
+        checkCycle(pending);
+
+        //先取出无依赖的节点，其余节点由依赖完成时触发
+        for (Node node : pending) {
+            if (node.unfinished.get() == 0) {
+                roots.add(node);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * 不持有锁，阻塞到全部节点结束，返回耗时
+     */
+    private static long run(List<Node> pending, List<Node> roots, int parallelism) throws InterruptedException {
+        int parallel = 0;
+        for (Node node : pending) {
+            if (node.parallel) {
+                parallel++;
+            }
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        ExecutorService executor = null;
+        if (parallelism > 1 && parallel > 1) {
+            executor = Executors.newFixedThreadPool(Math.min(parallelism, parallel),
+                    new PriorityThreadFactory("injector", Process.THREAD_PRIORITY_DEFAULT));
+        }
+        try {
+            Runner runner = new Runner(executor, pending.size());
+            for (Node node : roots) {
+                runner.schedule(node);
+            }
+            runner.runSerial();
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    public synchronized State getState(Class<? extends IInjector> clazz) {
+        Node node = mNodes.get(clazz);
+        return node == null ? null : node.state;
+    }
+
+    public synchronized void dump(PrintWriter pw) {
+        pw.println("InjectorManager: total = " + mTotalCost + "ms, parallelism = " + mParallelism);
+        for (Node node : mNodes.values()) {
+            pw.println("  " + node.injector.getClass().getName()
+                    + ": state = " + node.state
+                    + ", cost = " + node.cost + "ms"
+                    + (node.thread == null ? "" : ", thread = " + node.thread));
+        }
+    }
+
+    /**
+     * {@link DependsOn}中未添加的依赖通过无参构造函数创建
+     */
+    private void addMissingDependencies() {
+        List<Node> queue = new ArrayList<>(mNodes.values());
+        for (int i = 0; i < queue.size(); i++) {
+            DependsOn dependsOn = queue.get(i).injector.getClass().getAnnotation(DependsOn.class);
+            if (dependsOn == null) {
+                continue;
+            }
+            for (Class<? extends IInjector> clazz : dependsOn.value()) {
+                if (mNodes.containsKey(clazz) || Modifier.isAbstract(clazz.getModifiers())) {
+                    continue;
+                }
+                Constructor<?> constructor = noArgConstructor(clazz);
+                if (constructor == null) {
+                    continue;
+                }
+                Node node = new Node(newInstance(constructor));
+                mNodes.put(clazz, node);
+                queue.add(node);
+            }
+        }
+    }
+
+    private List<Node> dependencies(Node node) {
+        List<Node> list = new ArrayList<>();
+        DependsOn dependsOn = node.injector.getClass().getAnnotation(DependsOn.class);
+        if (dependsOn == null) {
+            return list;
+        }
+        for (Class<? extends IInjector> clazz : dependsOn.value()) {
+            Node dependency = mNodes.get(clazz);
+            if (dependency == null) {
+                logger.warn("dependency not found:{} -> {}", node.injector.getClass().getName(), clazz.getName());
+                continue;
+            }
+            list.add(dependency);
+        }
+        return list;
+    }
+
+    private void checkCycle(List<Node> pending) {
+        //Kahn算法，剩余的节点即存在环
+        Map<Node, Integer> degrees = new LinkedHashMap<>();
+        List<Node> queue = new ArrayList<>();
+        for (Node node : pending) {
+            degrees.put(node, node.unfinished.get());
+            if (node.unfinished.get() == 0) {
+                queue.add(node);
+            }
+        }
+        int visited = 0;
+        while (visited < queue.size()) {
+            Node node = queue.get(visited++);
+            for (Node dependent : node.dependents) {
+                int degree = degrees.get(dependent) - 1;
+                degrees.put(dependent, degree);
+                if (degree == 0) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        if (visited != pending.size()) {
+            throw new IllegalStateException("Cyclic @DependsOn between injectors");
+        }
+    }
+
+    private static final class Runner {
+        private final ExecutorService executor;
+        private final AtomicInteger remaining;
+        /**
+         * 需要在调用线程安装的节点
+         */
+        private final BlockingQueue<Node> serial = new LinkedBlockingQueue<>();
+
+        Runner(ExecutorService executor, int count) {
+            this.executor = executor;
+            this.remaining = new AtomicInteger(count);
+        }
+
+        void schedule(final Node node) {
+            if (executor != null && node.parallel) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Runner.this.run(node);
+                    }
+                });
+            } else {
+                serial.add(node);
+            }
+        }
+
+        /**
+         * 在调用线程执行串行节点，直到全部节点结束
+         */
+        void runSerial() throws InterruptedException {
+            while (true) {
+                Node node = serial.take();
+                if (node == DONE) {
+                    return;
+                }
+                run(node);
+            }
+        }
+
+        void run(Node node) {
+            if (node.dependencyFailed) {
+                node.state = State.SKIPPED;
+                logger.error("inject skipped:{}", node.injector.getClass().getName());
+            } else {
+                long start = SystemClock.elapsedRealtime();
+                try {
+                    node.injector.inject();
+                    node.state = State.SUCCESS;
+                } catch (Throwable e) {
+                    node.state = State.FAILED;
+                    logger.error("inject failed:" + node.injector.getClass().getName(), e);
+                }
+                node.cost = SystemClock.elapsedRealtime() - start;
+                node.thread = Thread.currentThread().getName();
+            }
+
+            boolean failed = node.state != State.SUCCESS;
+            for (Node dependent : node.dependents) {
+                if (failed) {
+                    dependent.dependencyFailed = true;
+                }
+                if (dependent.unfinished.decrementAndGet() == 0) {
+                    schedule(dependent);
+                }
+            }
+            if (remaining.decrementAndGet() == 0) {
+                serial.add(DONE);
+            }
+        }
+    }
+
+    private static final class Node {
+        final IInjector injector;
+        final boolean parallel;
+        final List<Node> dependents = new ArrayList<>();
+
+        volatile State state = State.PENDING;
+        volatile long cost;
+        volatile String thread;
+
+        AtomicInteger unfinished;
+        volatile boolean dependencyFailed;
+
+        Node(IInjector injector) {
+            this.injector = injector;
+            this.parallel = injector != null && injector.getClass().getAnnotation(Parallel.class) != null;
+        }
+    }
+}
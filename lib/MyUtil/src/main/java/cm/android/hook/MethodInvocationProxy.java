@@ -1,7 +1,13 @@
 package cm.android.hook;
 
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  *         <p>
@@ -26,6 +32,13 @@ public abstract class MethodInvocationProxy<T extends MethodInvocationStub> impl
         afterHookApply(invocationStub);
     }
 
+    /**
+     * {@link Inject#value()} -> 可实例化的MethodProxy构造函数，扫描结果只计算一次；
+     * 构造函数引用proxiesClass，value使用软引用，不阻止Class卸载
+     */
+    private static final Map<Class<?>, SoftReference<Constructor<?>[]>> sScanCache =
+            Collections.synchronizedMap(new WeakHashMap<Class<?>, SoftReference<Constructor<?>[]>>());
+
     protected void onBindMethods() {
 
         if (mInvocationStub == null) {
@@ -34,25 +47,39 @@ public abstract class MethodInvocationProxy<T extends MethodInvocationStub> impl
         Class<? extends MethodInvocationProxy> clazz = getClass();
         Inject inject = clazz.getAnnotation(Inject.class);
         if (inject != null) {
-            Class<?> proxiesClass = inject.value();
-            Class<?>[] innerClasses = proxiesClass.getDeclaredClasses();
-            for (Class<?> innerClass : innerClasses) {
-                if (!Modifier.isAbstract(innerClass.getModifiers())
-                        && MethodProxy.class.isAssignableFrom(innerClass)
-                        && innerClass.getAnnotation(SkipInject.class) == null) {
-                    addMethodProxy(innerClass);
-                }
+            for (Constructor<?> constructor : scan(inject.value())) {
+                addMethodProxy(constructor);
             }
+        }
+    }
 
+    private static Constructor<?>[] scan(Class<?> proxiesClass) {
+        SoftReference<Constructor<?>[]> ref = sScanCache.get(proxiesClass);
+        Constructor<?>[] constructors = ref == null ? null : ref.get();
+        if (constructors != null) {
+            return constructors;
         }
+
+        List<Constructor<?>> list = new ArrayList<>();
+        Class<?>[] innerClasses = proxiesClass.getDeclaredClasses();
+        for (Class<?> innerClass : innerClasses) {
+            if (!Modifier.isAbstract(innerClass.getModifiers())
+                    && MethodProxy.class.isAssignableFrom(innerClass)
+                    && innerClass.getAnnotation(SkipInject.class) == null) {
+                Constructor<?> constructor = innerClass.getDeclaredConstructors()[0];
+                if (!constructor.isAccessible()) {
+                    constructor.setAccessible(true);
+                }
+                list.add(constructor);
+            }
+        }
+        constructors = list.toArray(new Constructor<?>[list.size()]);
+        sScanCache.put(proxiesClass, new SoftReference<>(constructors));
+        return constructors;
     }
 
-    private void addMethodProxy(Class<?> hookType) {
+    private void addMethodProxy(Constructor<?> constructor) {
         try {
-            Constructor<?> constructor = hookType.getDeclaredConstructors()[0];
-            if (!constructor.isAccessible()) {
-                constructor.setAccessible(true);
-            }
             MethodProxy methodProxy;
             if (constructor.getParameterTypes().length == 0) {
                 methodProxy = (MethodProxy) constructor.newInstance();
@@ -61,7 +88,7 @@ public abstract class MethodInvocationProxy<T extends MethodInvocationStub> impl
             }
             mInvocationStub.addMethodProxy(methodProxy);
         } catch (Throwable e) {
-            throw new RuntimeException("Unable to instance Hook : " + hookType + " : " + e.getMessage());
+            throw new RuntimeException("Unable to instance Hook : " + constructor.getDeclaringClass() + " : " + e.getMessage());
         }
     }
 
@@ -9,6 +9,7 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,7 +27,16 @@ public class MethodInvocationStub<T> {
 
     private static Logger logger = LoggerFactory.getLogger("MethodInvocationStub");
 
-    private Map<String, MethodProxy> mInternalMethodProxies = new HashMap<>();
+    /**
+     * copy-on-write，写时整体替换，读无锁
+     */
+    private volatile Map<String, MethodProxy> mInternalMethodProxies = Collections.emptyMap();
+
+    /**
+     * Method -> 已解析的调用，hook变化时清空后按需重建
+     */
+    private volatile Map<Method, Dispatch> mDispatchTable = Collections.emptyMap();
+
     private T mBaseInterface;
     private T mProxyInterface;
     private String mIdentityName;
@@ -49,6 +59,17 @@ public class MethodInvocationStub<T> {
         }
     }
 
+    /**
+     * 不创建{@link Proxy}，由子类自行提供代理对象，见{@link DirectInvocationStub}
+     */
+    protected MethodInvocationStub(T baseInterface, boolean createProxy) {
+        this.mBaseInterface = baseInterface;
+        if (createProxy && baseInterface != null) {
+            Class<?>[] proxyInterfaces = MethodParameterUtils.getAllInterface(baseInterface.getClass());
+            mProxyInterface = (T) Proxy.newProxyInstance(baseInterface.getClass().getClassLoader(), proxyInterfaces, new HookInvocationHandler());
+        }
+    }
+
     public void setIdentityName(String identityName) {
         this.mIdentityName = identityName;
     }
@@ -69,8 +90,10 @@ public class MethodInvocationStub<T> {
      *
      * @param from the HookDelegate we copy from.
      */
-    public void copyMethodProxies(MethodInvocationStub from) {
-        this.mInternalMethodProxies.putAll(from.getAllHooks());
+    public synchronized void copyMethodProxies(MethodInvocationStub from) {
+        Map<String, MethodProxy> proxies = new HashMap<>(mInternalMethodProxies);
+        proxies.putAll(from.getAllHooks());
+        publish(proxies);
     }
 
     /**
@@ -78,14 +101,17 @@ public class MethodInvocationStub<T> {
      *
      * @param methodProxy proxy
      */
-    public MethodProxy addMethodProxy(MethodProxy methodProxy) {
+    public synchronized MethodProxy addMethodProxy(MethodProxy methodProxy) {
         if (methodProxy != null && !TextUtils.isEmpty(methodProxy.getMethodName())) {
-            if (mInternalMethodProxies.containsKey(methodProxy.getMethodName())) {
-                logger.warn("The Hook({}, {}) you added has been in existence.", methodProxy.getMethodName(),
+            String key = methodProxy.getKey();
+            if (mInternalMethodProxies.containsKey(key)) {
+                logger.warn("The Hook({}, {}) you added has been in existence.", key,
                         methodProxy.getClass().getName());
                 return methodProxy;
             }
-            mInternalMethodProxies.put(methodProxy.getMethodName(), methodProxy);
+            Map<String, MethodProxy> proxies = new HashMap<>(mInternalMethodProxies);
+            proxies.put(key, methodProxy);
+            publish(proxies);
         }
         return methodProxy;
     }
@@ -96,8 +122,14 @@ public class MethodInvocationStub<T> {
      * @param hookName proxy
      * @return The proxy you removed
      */
-    public MethodProxy removeMethodProxy(String hookName) {
-        return mInternalMethodProxies.remove(hookName);
+    public synchronized MethodProxy removeMethodProxy(String hookName) {
+        if (!mInternalMethodProxies.containsKey(hookName)) {
+            return null;
+        }
+        Map<String, MethodProxy> proxies = new HashMap<>(mInternalMethodProxies);
+        MethodProxy removed = proxies.remove(hookName);
+        publish(proxies);
+        return removed;
     }
 
     /**
@@ -107,15 +139,27 @@ public class MethodInvocationStub<T> {
      */
     public void removeMethodProxy(MethodProxy methodProxy) {
         if (methodProxy != null) {
-            removeMethodProxy(methodProxy.getMethodName());
+            removeMethodProxy(methodProxy.getKey());
         }
     }
 
     /**
      * Remove all method proxies.
      */
-    public void removeAllMethodProxies() {
-        mInternalMethodProxies.clear();
+    public synchronized void removeAllMethodProxies() {
+        publish(Collections.<String, MethodProxy>emptyMap());
+    }
+
+    private void publish(Map<String, MethodProxy> proxies) {
+        mInternalMethodProxies = Collections.unmodifiableMap(proxies);
+        mDispatchTable = Collections.emptyMap();
+        onMethodProxiesChanged(mInternalMethodProxies);
+    }
+
+    /**
+     * hook增删后回调，持有this锁
+     */
+    protected void onMethodProxiesChanged(Map<String, MethodProxy> proxies) {
     }
 
     /**
@@ -151,10 +195,56 @@ public class MethodInvocationStub<T> {
         return mInternalMethodProxies.size();
     }
 
+    private Dispatch getDispatch(Method method) {
+        Dispatch dispatch = mDispatchTable.get(method);
+        if (dispatch != null) {
+            return dispatch;
+        }
+
+        synchronized (this) {
+            Map<Method, Dispatch> table = mDispatchTable;
+            dispatch = table.get(method);
+            if (dispatch == null) {
+                dispatch = resolve(method);
+                Map<Method, Dispatch> newTable = new HashMap<>(table);
+                newTable.put(method, dispatch);
+                mDispatchTable = newTable;
+            }
+            return dispatch;
+        }
+    }
+
+    private Dispatch resolve(Method method) {
+        Map<String, MethodProxy> proxies = mInternalMethodProxies;
+        //精确匹配重载优先
+        MethodProxy methodProxy = proxies.get(MethodProxy.keyOf(method.getName(), method.getParameterTypes()));
+        if (methodProxy == null) {
+            methodProxy = proxies.get(method.getName());
+        }
+
+        //缓存首次的Method并跳过访问检查，ART下每次回调传入的Method可能是新实例
+        Method base = method;
+        if (!base.isAccessible()) {
+            base.setAccessible(true);
+        }
+        return new Dispatch(methodProxy, base);
+    }
+
+    private static final class Dispatch {
+        final MethodProxy methodProxy;
+        final Method base;
+
+        Dispatch(MethodProxy methodProxy, Method base) {
+            this.methodProxy = methodProxy;
+            this.base = base;
+        }
+    }
+
     private class HookInvocationHandler implements InvocationHandler {
         @Override
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            MethodProxy methodProxy = getMethodProxy(method.getName());
+            Dispatch dispatch = getDispatch(method);
+            MethodProxy methodProxy = dispatch.methodProxy;
             try {
                 if (methodProxy != null && methodProxy.isEnable()) {
                     if (methodProxy.beforeCall(mBaseInterface, method, args)) {
@@ -163,7 +253,7 @@ public class MethodInvocationStub<T> {
                         return res;
                     }
                 }
-                return method.invoke(mBaseInterface, args);
+                return dispatch.base.invoke(mBaseInterface, args);
             } catch (InvocationTargetException e) {
                 Throwable cause = e.getTargetException();
                 if (cause != null) {
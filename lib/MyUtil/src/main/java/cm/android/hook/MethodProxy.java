@@ -8,6 +8,31 @@ public abstract class MethodProxy {
 
     public abstract String getMethodName();
 
+    /**
+     * 指定参数类型时只hook对应的重载，默认null表示hook所有同名方法
+     */
+    public Class<?>[] getParameterTypes() {
+        return null;
+    }
+
+    final String getKey() {
+        return keyOf(getMethodName(), getParameterTypes());
+    }
+
+    static String keyOf(String name, Class<?>[] parameterTypes) {
+        if (parameterTypes == null) {
+            return name;
+        }
+        StringBuilder builder = new StringBuilder(name).append('(');
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(parameterTypes[i].getName());
+        }
+        return builder.append(')').toString();
+    }
+
     public boolean beforeCall(Object who, Method method, Object... args) {
         return true;
     }
@@ -0,0 +1,15 @@
+package cm.android.hook;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记{@link IInjector}可以在线程池中与其他injector并行安装，未标记的在调用{@link InjectorManager#injectAll()}的线程串行安装
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Parallel {
+
+}
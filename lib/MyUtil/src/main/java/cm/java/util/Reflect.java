@@ -113,23 +113,11 @@ public final class Reflect {
     }
 
     private Field getField(String name) throws ReflectException {
-        Class<?> type = type();
-
-        Exception e = null;
-        do {
-            try {
-                Field field = type.getDeclaredField(name);
-                return field;
-            } catch (NoSuchFieldException ignore) {
-                if (e == null) {
-                    e = ignore;
-                }
-            }
-
-            type = type.getSuperclass();
-        } while (type != null);
-
-        throw new ReflectException(e);
+        Field field = ReflectCache.findField(type(), name);
+        if (field == null) {
+            throw new ReflectException(new NoSuchFieldException(name));
+        }
+        return field;
     }
 
 //    @Deprecated
@@ -186,22 +174,11 @@ public final class Reflect {
     }
 
     private Method getMethod(String name, Class<?>[] types) throws NoSuchMethodException {
-        Class<?> type = type();
-
-        Exception e = null;
-        do {
-            try {
-                return type.getDeclaredMethod(name, types);
-            } catch (NoSuchMethodException ignore) {
-                if (e == null) {
-                    e = ignore;
-                }
-            }
-
-            type = type.getSuperclass();
-        } while (type != null);
-
-        throw new NoSuchMethodException();
+        Method method = ReflectCache.findMethod(type(), name, types);
+        if (method == null) {
+            throw new NoSuchMethodException(name);
+        }
+        return method;
     }
 
     public Reflect newInstance() throws ReflectException {
@@ -212,8 +189,10 @@ public final class Reflect {
     public Reflect newInstance(Class<?>[] types, Object... args) throws ReflectException {
         // Class<?>[] types = types(args);
         try {
-            Constructor<?> constructor = type().getDeclaredConstructor(types);
-            checkAccessible(constructor);
+            Constructor<?> constructor = ReflectCache.getDeclaredConstructor(type(), types);
+            if (constructor == null) {
+                throw new NoSuchMethodException(type().getName() + ".<init>");
+            }
             instance = constructor.newInstance(args);
             return this;
         } catch (Exception e) {
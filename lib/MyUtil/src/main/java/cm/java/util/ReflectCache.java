@@ -0,0 +1,213 @@
+package cm.java.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 反射元数据缓存，按Class缓存Field/Method/Constructor，查找失败的结果同样缓存
+ * <p>
+ * Class为弱引用key；缓存的Field/Method会引用其所属Class，因此value使用软引用，避免Class无法卸载。
+ * 查找不加锁，只有第一次访问某个Class时才写入
+ * <p>
+ * 返回的对象均已setAccessible(true)
+ */
+public final class ReflectCache {
+
+    private static final Object NONE = new Object();
+
+    private static final ConcurrentHashMap<ClassKey, SoftReference<ClassInfo>> sCache = new ConcurrentHashMap<>();
+
+    private static final ReferenceQueue<Class<?>> sQueue = new ReferenceQueue<>();
+
+    private ReflectCache() {
+    }
+
+    /**
+     * 只查找clazz自身声明的field
+     */
+    public static Field getDeclaredField(Class<?> clazz, String name) {
+        return (Field) get(classInfo(clazz).declaredFields, clazz, name, null, Kind.DECLARED_FIELD);
+    }
+
+    /**
+     * 沿父类链查找field
+     */
+    public static Field findField(Class<?> clazz, String name) {
+        return (Field) get(classInfo(clazz).fields, clazz, name, null, Kind.FIELD);
+    }
+
+    /**
+     * 沿父类链查找method
+     */
+    public static Method findMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        if (parameterTypes == null) {
+            parameterTypes = new Class<?>[0];
+        }
+        return (Method) get(classInfo(clazz).methods, clazz, name, parameterTypes, Kind.METHOD);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Constructor<T> getDeclaredConstructor(Class<T> clazz, Class<?>... parameterTypes) {
+        if (parameterTypes == null) {
+            parameterTypes = new Class<?>[0];
+        }
+        return (Constructor<T>) get(classInfo(clazz).constructors, clazz, "<init>", parameterTypes,
+                Kind.CONSTRUCTOR);
+    }
+
+    public static void clear() {
+        sCache.clear();
+    }
+
+    private static ClassInfo classInfo(Class<?> clazz) {
+        SoftReference<ClassInfo> ref = sCache.get(new ClassKey(clazz, null));
+        ClassInfo info = ref == null ? null : ref.get();
+        if (info != null) {
+            return info;
+        }
+
+        expungeStaleEntries();
+        ClassKey key = new ClassKey(clazz, sQueue);
+        info = new ClassInfo();
+        SoftReference<ClassInfo> newRef = new SoftReference<>(info);
+        while (true) {
+            ref = sCache.putIfAbsent(key, newRef);
+            if (ref == null) {
+                return info;
+            }
+            ClassInfo existing = ref.get();
+            if (existing != null) {
+                return existing;
+            }
+            //软引用已被回收
+            if (sCache.replace(key, ref, newRef)) {
+                return info;
+            }
+        }
+    }
+
+    private static void expungeStaleEntries() {
+        Object stale;
+        while ((stale = sQueue.poll()) != null) {
+            sCache.remove(stale);
+        }
+    }
+
+    private static Object get(ConcurrentMap<String, Object> map, Class<?> clazz, String name,
+                              Class<?>[] parameterTypes, Kind kind) {
+        String key = parameterTypes == null ? name : keyOf(name, parameterTypes);
+        Object value = map.get(key);
+        if (value == null) {
+            value = lookup(clazz, name, parameterTypes, kind);
+            if (value == null) {
+                value = NONE;
+            }
+            //并发首次查找时都返回先放入的那个
+            Object existing = map.putIfAbsent(key, value);
+            if (existing != null) {
+                value = existing;
+            }
+        }
+        return value == NONE ? null : value;
+    }
+
+    private static Object lookup(Class<?> clazz, String name, Class<?>[] parameterTypes, Kind kind) {
+        switch (kind) {
+            case DECLARED_FIELD:
+                try {
+                    return accessible(clazz.getDeclaredField(name));
+                } catch (NoSuchFieldException ignore) {
+                    return null;
+                }
+            case FIELD:
+                for (Class<?> type = clazz; type != null; type = type.getSuperclass()) {
+                    try {
+                        return accessible(type.getDeclaredField(name));
+                    } catch (NoSuchFieldException ignore) {
+                    }
+                }
+                return null;
+            case METHOD:
+                for (Class<?> type = clazz; type != null; type = type.getSuperclass()) {
+                    try {
+                        return accessible(type.getDeclaredMethod(name, parameterTypes));
+                    } catch (NoSuchMethodException ignore) {
+                    }
+                }
+                return null;
+            case CONSTRUCTOR:
+                try {
+                    return accessible(clazz.getDeclaredConstructor(parameterTypes));
+                } catch (NoSuchMethodException ignore) {
+                    return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    private static <T extends AccessibleObject> T accessible(T object) {
+        if (!object.isAccessible()) {
+            object.setAccessible(true);
+        }
+        return object;
+    }
+
+    private static String keyOf(String name, Class<?>[] parameterTypes) {
+        StringBuilder builder = new StringBuilder(name).append('(');
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(parameterTypes[i] == null ? "null" : parameterTypes[i].getName());
+        }
+        return builder.append(')').toString();
+    }
+
+    /**
+     * 按Class的identity比较的弱引用key，被回收后只与自身相等
+     */
+    private static final class ClassKey extends WeakReference<Class<?>> {
+        private final int hash;
+
+        ClassKey(Class<?> clazz, ReferenceQueue<Class<?>> queue) {
+            super(clazz, queue);
+            this.hash = System.identityHashCode(clazz);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof ClassKey)) {
+                return false;
+            }
+            Class<?> clazz = get();
+            return clazz != null && clazz == ((ClassKey) o).get();
+        }
+    }
+
+    private enum Kind {
+        DECLARED_FIELD, FIELD, METHOD, CONSTRUCTOR
+    }
+
+    private static final class ClassInfo {
+        final ConcurrentMap<String, Object> declaredFields = new ConcurrentHashMap<>();
+        final ConcurrentMap<String, Object> fields = new ConcurrentHashMap<>();
+        final ConcurrentMap<String, Object> methods = new ConcurrentHashMap<>();
+        final ConcurrentMap<String, Object> constructors = new ConcurrentHashMap<>();
+    }
+}
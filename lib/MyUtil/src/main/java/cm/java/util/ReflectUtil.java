@@ -55,31 +55,27 @@ public class ReflectUtil {
 
     public static <T> T getFieldValue(Object object, String fieldName)
             throws NoSuchFieldException, IllegalAccessException {
-        Field field = object.getClass().getDeclaredField(fieldName);
-        field.setAccessible(true);
+        Field field = getDeclaredField(object.getClass(), fieldName);
         T value = (T) field.get(object);
         return value;
     }
 
     public static void setFieldValue(Object object, String fieldName, Object filedValue)
             throws NoSuchFieldException, IllegalAccessException {
-        Field field = object.getClass().getDeclaredField(fieldName);
-        field.setAccessible(true);
+        Field field = getDeclaredField(object.getClass(), fieldName);
         field.set(object, filedValue);
     }
 
     public static <T> T getStaticFieldValue(Class clazz, String fieldName)
             throws NoSuchFieldException, IllegalAccessException {
-        Field field = clazz.getDeclaredField(fieldName);
-        field.setAccessible(true);
+        Field field = getDeclaredField(clazz, fieldName);
         T value = (T) field.get(null);
         return value;
     }
 
     public static void setStaticFieldValue(Class clazz, String fieldName, Object filedValue)
             throws NoSuchFieldException, IllegalAccessException {
-        Field field = clazz.getDeclaredField(fieldName);
-        field.setAccessible(true);
+        Field field = getDeclaredField(clazz, fieldName);
         field.set(null, filedValue);
     }
 
@@ -95,19 +91,15 @@ public class ReflectUtil {
 //    }
 
     public static Method getMethod(Class clazz, String methodName, Class<?>... parameterTypes) {
-        Class<?> type = clazz;
-        do {
-            try {
-                Method method = type.getDeclaredMethod(methodName, parameterTypes);
-                method.setAccessible(true);
-                return method;
-            } catch (NoSuchMethodException ignore) {
-            }
-            type = type.getSuperclass();
-        }
-        while (type != null);
+        return ReflectCache.findMethod(clazz, methodName, parameterTypes);
+    }
 
-        return null;
+    private static Field getDeclaredField(Class clazz, String fieldName) throws NoSuchFieldException {
+        Field field = ReflectCache.getDeclaredField(clazz, fieldName);
+        if (field == null) {
+            throw new NoSuchFieldException(fieldName);
+        }
+        return field;
     }
 
     /**
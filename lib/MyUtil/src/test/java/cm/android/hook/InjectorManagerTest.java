@@ -0,0 +1,214 @@
+package cm.android.hook;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import cm.android.util.BuildConfig;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 22)
+public class InjectorManagerTest {
+
+    private static final List<String> sOrder = Collections.synchronizedList(new ArrayList<String>());
+
+    private static final List<String> sThreads = Collections.synchronizedList(new ArrayList<String>());
+
+    private abstract static class RecordInjector implements IInjector {
+        @Override
+        public void inject() throws Throwable {
+            synchronized (sOrder) {
+                sOrder.add(getClass().getSimpleName());
+                sThreads.add(Thread.currentThread().getName());
+            }
+        }
+
+        @Override
+        public boolean isEnvBad() {
+            return false;
+        }
+    }
+
+    public static class Injectors {
+        static class A extends RecordInjector {
+        }
+
+        @DependsOn(A.class)
+        static class B extends RecordInjector {
+        }
+
+        @DependsOn({A.class, B.class})
+        static class C extends RecordInjector {
+        }
+
+        @SkipInject
+        static class Skipped extends RecordInjector {
+        }
+    }
+
+    @Parallel
+    static class P1 extends RecordInjector {
+    }
+
+    @Parallel
+    static class P2 extends RecordInjector {
+    }
+
+    @DependsOn(P1.class)
+    static class AfterParallel extends RecordInjector {
+    }
+
+    static class Failing extends RecordInjector {
+        @Override
+        public void inject() throws Throwable {
+            throw new IllegalStateException("fail");
+        }
+    }
+
+    @DependsOn(Failing.class)
+    static class DependsOnFailing extends RecordInjector {
+    }
+
+    @DependsOn(CycleB.class)
+    static class CycleA extends RecordInjector {
+    }
+
+    @DependsOn(CycleA.class)
+    static class CycleB extends RecordInjector {
+    }
+
+    private static volatile InjectorManager sManager;
+
+    /**
+     * 在线程池中回调manager
+     */
+    @Parallel
+    static class CallbackP1 extends RecordInjector {
+        @Override
+        public void inject() throws Throwable {
+            super.inject();
+            assertNotNull(sManager.findInjector(CallbackP2.class));
+            sManager.getState(CallbackP2.class);
+        }
+    }
+
+    @Parallel
+    static class CallbackP2 extends RecordInjector {
+        @Override
+        public void inject() throws Throwable {
+            super.inject();
+            sManager.getState(CallbackP1.class);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        sOrder.clear();
+        sThreads.clear();
+    }
+
+    @Test
+    public void testDependencyOrder() throws Exception {
+        InjectorManager manager = new InjectorManager();
+        manager.addInjector(new Injectors.C());
+        manager.addInjector(new Injectors.B());
+        manager.addInjector(new Injectors.A());
+        manager.injectAll();
+
+        assertEquals(3, sOrder.size());
+        assertTrue(sOrder.indexOf("A") < sOrder.indexOf("B"));
+        assertTrue(sOrder.indexOf("B") < sOrder.indexOf("C"));
+        assertEquals(InjectorManager.State.SUCCESS, manager.getState(Injectors.C.class));
+
+        //已成功的不重复安装
+        manager.injectAll();
+        assertEquals(3, sOrder.size());
+    }
+
+    @Test
+    public void testDiscover() throws Exception {
+        InjectorManager manager = new InjectorManager();
+        manager.discover(Injectors.class);
+
+        assertNotNull(manager.findInjector(Injectors.A.class));
+        assertNotNull(manager.findInjector(Injectors.C.class));
+        assertEquals(null, manager.findInjector(Injectors.Skipped.class));
+    }
+
+    @Test
+    public void testMissingDependencyCreated() throws Exception {
+        InjectorManager manager = new InjectorManager();
+        manager.addInjector(new Injectors.C());
+        manager.injectAll();
+
+        assertEquals(3, sOrder.size());
+        assertEquals("C", sOrder.get(2));
+    }
+
+    @Test
+    public void testCycle() throws Exception {
+        InjectorManager manager = new InjectorManager();
+        manager.addInjector(new CycleA());
+        manager.addInjector(new CycleB());
+        try {
+            manager.injectAll();
+            fail();
+        } catch (IllegalStateException e) {
+            //ok
+        }
+        assertTrue(sOrder.isEmpty());
+    }
+
+    @Test
+    public void testDependencyFailed() throws Exception {
+        InjectorManager manager = new InjectorManager();
+        manager.addInjector(new Failing());
+        manager.addInjector(new DependsOnFailing());
+        manager.injectAll();
+
+        assertEquals(InjectorManager.State.FAILED, manager.getState(Failing.class));
+        assertEquals(InjectorManager.State.SKIPPED, manager.getState(DependsOnFailing.class));
+        assertTrue(sOrder.isEmpty());
+    }
+
+    @Test
+    public void testSerialUnlessParallel() throws Exception {
+        InjectorManager manager = new InjectorManager();
+        manager.setParallelism(4);
+        manager.addInjector(new Injectors.A());
+        manager.addInjector(new P1());
+        manager.addInjector(new P2());
+        manager.addInjector(new AfterParallel());
+        manager.injectAll();
+
+        String caller = Thread.currentThread().getName();
+        assertEquals(4, sOrder.size());
+        assertEquals(caller, sThreads.get(sOrder.indexOf("A")));
+        assertEquals(caller, sThreads.get(sOrder.indexOf("AfterParallel")));
+        assertTrue(sOrder.indexOf("P1") < sOrder.indexOf("AfterParallel"));
+    }
+
+    @Test(timeout = 10 * 1000)
+    public void testCallbackFromParallelInjector() throws Exception {
+        InjectorManager manager = new InjectorManager();
+        sManager = manager;
+        manager.setParallelism(2);
+        manager.addInjector(new CallbackP1());
+        manager.addInjector(new CallbackP2());
+        manager.injectAll();
+
+        assertEquals(InjectorManager.State.SUCCESS, manager.getState(CallbackP1.class));
+        assertEquals(InjectorManager.State.SUCCESS, manager.getState(CallbackP2.class));
+    }
+}
@@ -0,0 +1,222 @@
+package cm.android.hook;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Method;
+
+import cm.android.util.BuildConfig;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 22)
+public class MethodInvocationStubTest {
+
+    public interface Calc {
+        int add(int a, int b);
+
+        int add(int a);
+
+        int sub(int a, int b);
+    }
+
+    private static class CalcImpl implements Calc {
+        @Override
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        @Override
+        public int add(int a) {
+            return a + 1;
+        }
+
+        @Override
+        public int sub(int a, int b) {
+            return a - b;
+        }
+    }
+
+    private static class AddOneProxy extends MethodProxy {
+        @Override
+        public String getMethodName() {
+            return "add";
+        }
+
+        @Override
+        public Class<?>[] getParameterTypes() {
+            return new Class<?>[]{int.class};
+        }
+
+        @Override
+        public Object call(Object who, Method method, Object... args) throws Throwable {
+            return -1;
+        }
+    }
+
+    private static class SubProxy extends MethodProxy {
+        @Override
+        public String getMethodName() {
+            return "sub";
+        }
+
+        @Override
+        public Object call(Object who, Method method, Object... args) throws Throwable {
+            return 0;
+        }
+    }
+
+    private static class DirectCalcStub extends DirectInvocationStub<Calc> {
+        private static final Signature ADD2 = new Signature(0, "add", int.class, int.class);
+        private static final Signature ADD1 = new Signature(1, "add", int.class);
+        private static final Signature SUB = new Signature(2, "sub", int.class, int.class);
+
+        DirectCalcStub(Calc base) {
+            super(base, Calc.class, ADD2, ADD1, SUB);
+        }
+
+        @Override
+        protected Calc createDelegate() {
+            return new Calc() {
+                @Override
+                public int add(int a, int b) {
+                    if (isHooked(ADD2)) {
+                        return (Integer) invokeHook(ADD2, a, b);
+                    }
+                    return getBaseInterface().add(a, b);
+                }
+
+                @Override
+                public int add(int a) {
+                    if (isHooked(ADD1)) {
+                        return (Integer) invokeHook(ADD1, a);
+                    }
+                    return getBaseInterface().add(a);
+                }
+
+                @Override
+                public int sub(int a, int b) {
+                    if (isHooked(SUB)) {
+                        return (Integer) invokeHook(SUB, a, b);
+                    }
+                    return getBaseInterface().sub(a, b);
+                }
+            };
+        }
+    }
+
+    @Test
+    public void testDirectDispatch() throws Exception {
+        DirectCalcStub stub = new DirectCalcStub(new CalcImpl());
+        stub.addMethodProxy(new AddOneProxy());
+        Calc calc = stub.getProxyInterface();
+
+        assertEquals(-1, calc.add(1));
+        assertEquals(3, calc.add(1, 2));
+        assertEquals(1, calc.sub(3, 2));
+
+        stub.addMethodProxy(new SubProxy());
+        assertEquals(0, calc.sub(3, 2));
+        stub.removeMethodProxy("sub");
+        assertEquals(1, calc.sub(3, 2));
+    }
+
+    @Test
+    public void testOverloadDispatch() throws Exception {
+        MethodInvocationStub<Calc> stub = new MethodInvocationStub<Calc>(new CalcImpl());
+        stub.addMethodProxy(new AddOneProxy());
+        Calc calc = stub.getProxyInterface();
+
+        assertEquals(-1, calc.add(1));
+        assertEquals(3, calc.add(1, 2));
+        assertEquals(1, calc.sub(3, 2));
+    }
+
+    @Test
+    public void testAddAndRemove() throws Exception {
+        MethodInvocationStub<Calc> stub = new MethodInvocationStub<Calc>(new CalcImpl());
+        Calc calc = stub.getProxyInterface();
+        assertEquals(1, calc.sub(3, 2));
+
+        SubProxy subProxy = new SubProxy();
+        stub.addMethodProxy(subProxy);
+        assertEquals(0, calc.sub(3, 2));
+
+        stub.removeMethodProxy(subProxy);
+        assertEquals(1, calc.sub(3, 2));
+        assertNull(stub.getMethodProxy("sub"));
+    }
+
+    /**
+     * 耗时受机器和JIT影响，不放在常规测试中，需要时手动运行
+     */
+    @Ignore("benchmark")
+    @Test
+    public void testDispatchCost() throws Exception {
+        Calc direct = new CalcImpl();
+        MethodInvocationStub<Calc> stub = new MethodInvocationStub<Calc>(new CalcImpl());
+        stub.addMethodProxy(new SubProxy());
+        Calc proxy = stub.getProxyInterface();
+        DirectCalcStub directStub = new DirectCalcStub(new CalcImpl());
+        directStub.addMethodProxy(new SubProxy());
+        Calc delegate = directStub.getProxyInterface();
+
+        int count = 100000;
+        //预热
+        sumAdd(direct, count);
+        sumAdd(proxy, count);
+        sumAdd(delegate, count);
+        sumSub(proxy, count);
+        sumSub(delegate, count);
+
+        long start = System.nanoTime();
+        long expected = sumAdd(direct, count);
+        long directCost = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        assertEquals(expected, sumAdd(proxy, count));
+        long unhookedCost = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        assertEquals(0, sumSub(proxy, count));
+        long hookedCost = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        assertEquals(expected, sumAdd(delegate, count));
+        long directUnhookedCost = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        assertEquals(0, sumSub(delegate, count));
+        long directHookedCost = System.nanoTime() - start;
+
+        System.out.println("dispatch cost(ns/call): direct = " + directCost / count
+                + ",proxy unhooked = " + unhookedCost / count
+                + ",proxy hooked = " + hookedCost / count
+                + ",directStub unhooked = " + directUnhookedCost / count
+                + ",directStub hooked = " + directHookedCost / count);
+        //不依赖Proxy的stub至少不应比Proxy慢
+        assertTrue(directHookedCost <= hookedCost);
+    }
+
+    private static long sumAdd(Calc calc, int count) {
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += calc.add(i, 1);
+        }
+        return sum;
+    }
+
+    private static long sumSub(Calc calc, int count) {
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += calc.sub(i, 1);
+        }
+        return sum;
+    }
+}
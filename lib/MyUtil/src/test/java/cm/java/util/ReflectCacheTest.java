@@ -0,0 +1,94 @@
+package cm.java.util;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class ReflectCacheTest {
+
+    private static class Base {
+        private int value = 1;
+
+        private int value() {
+            return value;
+        }
+    }
+
+    private static class Child extends Base {
+    }
+
+    @Test
+    public void testFindInSuperClass() throws Exception {
+        Field field = ReflectCache.findField(Child.class, "value");
+        assertNotNull(field);
+        assertTrue(field.isAccessible());
+        assertEquals(1, field.getInt(new Child()));
+
+        Method method = ReflectCache.findMethod(Child.class, "value");
+        assertNotNull(method);
+        assertSame(method, ReflectCache.findMethod(Child.class, "value"));
+
+        assertNull(ReflectCache.getDeclaredField(Child.class, "value"));
+    }
+
+    @Test
+    public void testNegativeResult() throws Exception {
+        assertNull(ReflectCache.findMethod(ArrayList.class, "notExist", int.class));
+        assertNull(ReflectCache.findMethod(ArrayList.class, "notExist", int.class));
+        assertNull(ReflectCache.getDeclaredConstructor(ArrayList.class, String.class));
+    }
+
+    @Test
+    public void testNullParameterType() throws Exception {
+        assertNull(ReflectCache.findMethod(ArrayList.class, "add", (Class<?>) null));
+        assertNull(ReflectCache.findMethod(ArrayList.class, "add", int.class, null));
+        assertNotNull(ReflectCache.findMethod(ArrayList.class, "size", (Class<?>[]) null));
+        assertSame(ReflectCache.findMethod(ArrayList.class, "size"),
+                ReflectCache.findMethod(ArrayList.class, "size", (Class<?>[]) null));
+    }
+
+    @Test
+    public void testConcurrentLookup() throws Exception {
+        ReflectCache.clear();
+        int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final Method[] results = new Method[threads];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            workers[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 1000; j++) {
+                        results[index] = ReflectCache.findMethod(Child.class, "value");
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join(10000);
+        }
+
+        Method expected = ReflectCache.findMethod(Child.class, "value");
+        assertNotNull(expected);
+        for (Method result : results) {
+            assertSame(expected, result);
+        }
+    }
+}